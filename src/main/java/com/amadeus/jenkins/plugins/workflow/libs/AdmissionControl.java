@@ -0,0 +1,328 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits the number of downloads running at the same time against each host, so that a burst of builds does not
+ * overload the server. The downloads over the limit wait in a queue ordered by priority (see
+ * {@link DownloadScheduler.Priority}), and by order of arrival within the same priority, so none of the builds
+ * starves. The background downloads only use up to half of the limit, so that a build always finds room quickly.
+ * <p>
+ * The limit is either the configured one, or adapted between 1 and the configured one (additive increase,
+ * multiplicative decrease): it grows slowly while the host answers quickly, and is halved when the host fails or its
+ * response time rises well above its usual one.
+ */
+@Restricted(NoExternalUse.class)
+final class AdmissionControl {
+
+    private static final Logger LOGGER = Logger.getLogger(AdmissionControl.class.getName());
+
+    /**
+     * Response time, relative to the lowest recent one of the host, above which the host is considered overloaded
+     */
+    static final double LATENCY_TOLERANCE = 2;
+
+    /**
+     * Number of responses after which the lowest response time of a host is measured again
+     */
+    static final int LATENCY_SAMPLES = 100;
+
+    /**
+     * Minimum delay between two decreases of the limit of a host, so that a burst of failures halves it only once
+     */
+    static final long DECREASE_INTERVAL_MILLIS = 1000;
+
+    private static final AdmissionControl INSTANCE = new AdmissionControl(
+            () -> HttpRetrieverConfiguration.get().getMaxDownloadsPerHost(),
+            () -> HttpRetrieverConfiguration.get().isAdaptiveDownloadLimit());
+
+    private final IntSupplier maxPerHost;
+    private final BooleanSupplier adaptive;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong arrivals = new AtomicLong();
+
+    /**
+     * @param maxPerHost maximum number of downloads running at the same time against a host, 0 for no limit
+     * @param adaptive   whether the limit of each host is adapted to its response times and failures
+     */
+    AdmissionControl(@NonNull IntSupplier maxPerHost, @NonNull BooleanSupplier adaptive) {
+        this.maxPerHost = maxPerHost;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * @return the admission control shared by all the retrievers
+     */
+    @NonNull
+    static AdmissionControl get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Waits for the permission to download from a host. Once given, the permit must be closed when the download
+     * completes, and the response time of the host should be reported.
+     *
+     * @param host          the host
+     * @param priority      the priority of the download
+     * @param maxWaitMillis how long to wait at most
+     * @return the permit, or null if none could be given in time
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    @CheckForNull
+    Permit acquire(@NonNull String host, @NonNull DownloadScheduler.Priority priority, long maxWaitMillis)
+            throws InterruptedException {
+        return acquire(host, () -> priority, maxWaitMillis);
+    }
+
+    /**
+     * Waits for the permission to download from a host, for a download whose priority can be raised while it waits
+     * (see {@link #onPriorityRaised()}).
+     *
+     * @param host          the host
+     * @param priority      the current priority of the download
+     * @param maxWaitMillis how long to wait at most
+     * @return the permit, or null if none could be given in time
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    @CheckForNull
+    Permit acquire(@NonNull String host, @NonNull Supplier<DownloadScheduler.Priority> priority, long maxWaitMillis)
+            throws InterruptedException {
+        Host state = hosts.computeIfAbsent(host, h -> new Host());
+        long start = System.nanoTime();
+        Ticket ticket = new Ticket(priority, arrivals.getAndIncrement());
+        if (!state.enter(ticket, maxPerHost.getAsInt(), TimeUnit.MILLISECONDS.toNanos(maxWaitMillis))) {
+            return null;
+        }
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (waited > 0) {
+            HttpRetrieverMetrics.increment(HttpRetrieverMetrics.Metric.ADMISSION_WAITS);
+            HttpRetrieverMetrics.add(HttpRetrieverMetrics.Metric.ADMISSION_WAIT_MILLIS, waited);
+        }
+        return new Permit(host, state, waited);
+    }
+
+    /**
+     * Lets the downloads whose priority was raised while they wait take their new place in the queue of their host
+     */
+    void onPriorityRaised() {
+        for (Host state : hosts.values()) {
+            synchronized (state) {
+                state.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @param host the host
+     * @return the current limit of the host, 0 for no limit
+     */
+    int getLimit(@NonNull String host) {
+        int max = maxPerHost.getAsInt();
+        Host state = hosts.get(host);
+        if (state == null || max <= 0) {
+            return max;
+        }
+        synchronized (state) {
+            return state.limit(max);
+        }
+    }
+
+    /**
+     * @return the current limit of each host requested since the controller started, by host, 0 for no limit
+     */
+    @NonNull
+    Map<String, Integer> getLimits() {
+        Map<String, Integer> limits = new TreeMap<>();
+        for (String host : hosts.keySet()) {
+            limits.put(host, getLimit(host));
+        }
+        return limits;
+    }
+
+    /**
+     * The permission to download from a host
+     */
+    final class Permit implements AutoCloseable {
+        private final String host;
+        private final Host state;
+        private final long waitedMillis;
+        private boolean closed;
+
+        private Permit(String host, Host state, long waitedMillis) {
+            this.host = host;
+            this.state = state;
+            this.waitedMillis = waitedMillis;
+        }
+
+        /**
+         * @return how long the download waited for its turn
+         */
+        long getWaitedMillis() {
+            return waitedMillis;
+        }
+
+        /**
+         * @return the number of downloads that can run at the same time against the host when it was given
+         */
+        int getLimit() {
+            return AdmissionControl.this.getLimit(host);
+        }
+
+        /**
+         * Reports how the host answered, which adapts its limit
+         *
+         * @param success       whether the host answered properly, rather than failing or being overloaded
+         * @param latencyMillis time the host took to send the response headers
+         */
+        void report(boolean success, long latencyMillis) {
+            if (adaptive.getAsBoolean()) {
+                state.adapt(host, maxPerHost.getAsInt(), success, latencyMillis);
+            }
+        }
+
+        /**
+         * Lets the next download in
+         */
+        @Override
+        public void close() {
+            synchronized (state) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            state.leave();
+        }
+    }
+
+    /**
+     * The place of a download in the queue of its host, which moves up if its priority is raised
+     */
+    private static final class Ticket {
+        private static final Comparator<Ticket> ORDER = Comparator.<Ticket, DownloadScheduler.Priority>comparing(
+                ticket -> ticket.priority.get()).thenComparingLong(ticket -> ticket.arrival);
+
+        private final Supplier<DownloadScheduler.Priority> priority;
+        private final long arrival;
+
+        Ticket(Supplier<DownloadScheduler.Priority> priority, long arrival) {
+            this.priority = priority;
+            this.arrival = arrival;
+        }
+    }
+
+    private final class Host {
+        // Not a priority queue, since the priorities can change: there are few downloads waiting anyway
+        private final List<Ticket> queue = new ArrayList<>();
+        private int running;
+        private double adaptedLimit = Double.NaN;
+        private long lowestLatency = Long.MAX_VALUE;
+        private long previousLowestLatency = Long.MAX_VALUE;
+        private int samples;
+        private long decreasedAt;
+
+        /**
+         * Waits for its turn, by priority then in order of arrival
+         */
+        synchronized boolean enter(Ticket ticket, int max, long maxWaitNanos) throws InterruptedException {
+            if (max <= 0 || queue.isEmpty() && running < limit(max, ticket.priority.get())) {
+                running++;
+                return true;
+            }
+            queue.add(ticket);
+            long start = System.nanoTime();
+            try {
+                while (Collections.min(queue, Ticket.ORDER) != ticket
+                        || running >= limit(maxPerHost.getAsInt(), ticket.priority.get())) {
+                    // Compared as a difference, which does not overflow with an unlimited wait
+                    long remaining = maxWaitNanos - (System.nanoTime() - start);
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+                running++;
+                return true;
+            } finally {
+                // Gone in or given up: the next one in the queue may go in now
+                queue.remove(ticket);
+                notifyAll();
+            }
+        }
+
+        synchronized void leave() {
+            running--;
+            notifyAll();
+        }
+
+        /**
+         * The current limit for the downloads of a priority
+         */
+        int limit(int max, DownloadScheduler.Priority priority) {
+            int limit = limit(max);
+            return priority == DownloadScheduler.Priority.BACKGROUND ? Math.max(1, limit / 2) : limit;
+        }
+
+        /**
+         * The current limit, clamped to the configured one which can change at runtime
+         */
+        int limit(int max) {
+            if (max <= 0) {
+                return Integer.MAX_VALUE;
+            }
+            if (!adaptive.getAsBoolean() || Double.isNaN(adaptedLimit)) {
+                return max;
+            }
+            return (int) Math.max(1, Math.min(max, adaptedLimit));
+        }
+
+        synchronized void adapt(String host, int max, boolean success, long latencyMillis) {
+            if (max <= 0) {
+                return;
+            }
+            if (Double.isNaN(adaptedLimit) || adaptedLimit > max) {
+                adaptedLimit = max;
+            }
+            boolean overloaded = !success;
+            if (success) {
+                lowestLatency = Math.min(lowestLatency, latencyMillis);
+                long usualLatency = Math.min(lowestLatency, previousLowestLatency);
+                overloaded = latencyMillis > LATENCY_TOLERANCE * Math.max(1, usualLatency);
+                if (++samples >= LATENCY_SAMPLES) {
+                    previousLowestLatency = lowestLatency;
+                    lowestLatency = Long.MAX_VALUE;
+                    samples = 0;
+                }
+            }
+            long now = System.currentTimeMillis();
+            if (!overloaded) {
+                // About one more download per limit of successful ones
+                adaptedLimit = Math.min(max, adaptedLimit + 1 / adaptedLimit);
+                notifyAll();
+            } else if (now - decreasedAt >= DECREASE_INTERVAL_MILLIS) {
+                decreasedAt = now;
+                adaptedLimit = Math.max(1, adaptedLimit / 2);
+                LOGGER.log(Level.FINE, "Limiting the downloads from {0} to {1}",
+                        new Object[]{host, (int) adaptedLimit});
+            }
+        }
+    }
+}
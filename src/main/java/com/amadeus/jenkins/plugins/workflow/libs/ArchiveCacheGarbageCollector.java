@@ -0,0 +1,38 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import org.apache.commons.io.FileUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically collects the garbage of the {@link LibraryArchiveCache}, keeping it within its quota.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class ArchiveCacheGarbageCollector extends AsyncPeriodicWork {
+
+    public ArchiveCacheGarbageCollector() {
+        super("HTTP shared libraries cache garbage collection");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(15);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException {
+        HttpRetrieverConfiguration config = HttpRetrieverConfiguration.get();
+        if (!config.isCacheEnabled()) {
+            return;
+        }
+        long size = LibraryArchiveCache.get().collectGarbage(config.getCacheQuotaMegabytes() * FileUtils.ONE_MB);
+        listener.getLogger().println("Cache size after collection: " + FileUtils.byteCountToDisplaySize(size));
+    }
+}
@@ -0,0 +1,451 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+
+/**
+ * Extracts library archives, zip or compressed tar (see {@link ArchiveFormat}), refusing the entries that could be
+ * written outside of the destination directory. The links of tar archives are skipped for the same reason.
+ * <p>
+ * Existing files are replaced by new files rather than overwritten, so that the files linked from the directory
+ * of previous builds (see {@link MaterializationStrategy#HARD_LINK}) are left untouched. The files are written with
+ * pooled {@link ExtractionBuffers}, and the deflated entries of zip files are inflated with their pooled inflater.
+ */
+@Restricted(NoExternalUse.class)
+final class ArchiveExtractor {
+
+    private static final Logger LOGGER = Logger.getLogger(ArchiveExtractor.class.getName());
+
+    /**
+     * Top-level directories of a shared library, which are never considered as a wrapping directory
+     */
+    private static final Set<String> LIBRARY_DIRECTORIES = Set.of("src", "vars", "resources");
+
+    /**
+     * Number of files below which a parallel extraction task does not split anymore
+     */
+    private static final int FILES_PER_TASK = 8;
+
+    /**
+     * Pool shared by the parallel extractions, so that concurrent builds do not use more threads than configured.
+     * A pool replaced because the parallelism changed is shut down once the extractions it runs are done.
+     */
+    private static ForkJoinPool pool;
+
+    private ArchiveExtractor() {
+    }
+
+    /**
+     * Checks that an archive entry stays inside the extraction directory
+     *
+     * @param name name of the entry
+     * @throws IOException if the entry refers to a parent directory
+     */
+    static void checkEntryName(String name) throws IOException {
+        if (name != null && name.contains("..")) {
+            throw new IOException("Unsupported ZIP format that contains relative paths to parent that could cause a security breach");
+        }
+    }
+
+    /**
+     * Extracts an archive file, whose format is recognized from its content. All the entries are checked before
+     * anything is written. When all of them are inside a single directory, as in the archives generated by GitHub
+     * or GitLab, that directory is stripped so that its content lands directly in the destination.
+     *
+     * @param archive     the archive file
+     * @param destination directory where to extract the archive
+     * @throws IOException if the archive is invalid, contains unsafe entries or cannot be written
+     */
+    static void extract(@NonNull Path archive, @NonNull Path destination) throws IOException {
+        extract(archive, destination, 1);
+    }
+
+    /**
+     * Extracts an archive file, as {@link #extract(Path, Path)} does. The files of a zip archive are extracted
+     * concurrently once all the directories are created, since its central directory gives access to each of them.
+     *
+     * @param archive     the archive file
+     * @param destination directory where to extract the archive
+     * @param parallelism maximum number of files extracted at the same time by all the extractions
+     * @throws IOException if the archive is invalid, contains unsafe entries or cannot be written, or if the thread
+     *                     was interrupted while waiting for the parallel extraction, which is then stopped
+     */
+    static void extract(@NonNull Path archive, @NonNull Path destination, int parallelism) throws IOException {
+        Path root = destination.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        ArchiveFormat format = ArchiveFormat.of(archive);
+        if (format.isTar()) {
+            extractTar(archive, format, root);
+            return;
+        }
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            List<ZipArchiveEntry> entries = Collections.list(zipFile.getEntries());
+            List<String> names = new ArrayList<>(entries.size());
+            for (ZipArchiveEntry entry : entries) {
+                checkEntryName(entry.getName());
+                names.add(entry.getName());
+            }
+            int strip = wrappingDirectory(names).length();
+            Set<Path> directories = new LinkedHashSet<>();
+            // The last entry wins when several have the same name
+            Map<Path, ZipArchiveEntry> files = new LinkedHashMap<>();
+            for (ZipArchiveEntry entry : entries) {
+                String name = entry.getName().substring(strip);
+                if (name.isEmpty()) {
+                    continue;
+                }
+                Path target = resolve(root, name);
+                if (entry.isDirectory()) {
+                    directories.add(target);
+                } else {
+                    directories.add(target.getParent());
+                    files.put(target, entry);
+                }
+            }
+            for (Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+            List<Path> targets = new ArrayList<>(files.keySet());
+            if (parallelism > 1 && targets.size() > 1) {
+                extractInParallel(new ExtractTask(zipFile, files, targets, 0, targets.size(), new AtomicBoolean()),
+                        parallelism);
+            } else {
+                for (Path target : targets) {
+                    extractFile(zipFile, files.get(target), target);
+                }
+            }
+        }
+    }
+
+    private static void extractFile(ZipFile zipFile, ZipArchiveEntry entry, Path target) throws IOException {
+        try (ExtractionBuffers buffers = ExtractionBuffers.acquire()) {
+            if (entry.getMethod() == ZipEntry.DEFLATED && zipFile.canReadEntryData(entry)) {
+                try (InputStream raw = zipFile.getRawInputStream(entry)) {
+                    buffers.inflate(raw, target);
+                }
+            } else {
+                // Stored, or compressed with a method the zip file knows better
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    buffers.copy(in, target);
+                }
+            }
+        }
+        setAttributes(target, entry.getTime(), entry.getUnixMode());
+    }
+
+    /**
+     * Runs an extraction task in the shared pool, and waits for it. When the waiting thread is interrupted, the task
+     * is stopped and waited for, so that nothing is written to the destination once this returns.
+     */
+    private static void extractInParallel(ExtractTask task, int parallelism) throws IOException {
+        ForkJoinTask<Void> submitted = submit(task, parallelism);
+        try {
+            submitted.get();
+        } catch (InterruptedException e) {
+            task.cancelled.set(true);
+            // Each worker stops before its next file
+            submitted.quietlyJoin();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting the archive");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Submits to the pool under its lock, so that the pool cannot be shut down in the meantime
+     */
+    private static synchronized ForkJoinTask<Void> submit(ExtractTask task, int parallelism) {
+        if (pool == null || pool.getParallelism() != parallelism) {
+            if (pool != null) {
+                // The tasks already submitted still run
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(parallelism, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("HTTP library extraction " + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return pool.submit(task);
+    }
+
+    /**
+     * Extracts a range of the files of a zip archive, splitting it between the workers of the pool.
+     * The zip file reads each entry with positional reads, so entries can be inflated concurrently.
+     */
+    private static final class ExtractTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ZipFile zipFile;
+        private final transient Map<Path, ZipArchiveEntry> files;
+        private final transient List<Path> targets;
+        private final int from;
+        private final int to;
+        private final transient AtomicBoolean cancelled;
+
+        ExtractTask(ZipFile zipFile, Map<Path, ZipArchiveEntry> files, List<Path> targets, int from, int to,
+                    AtomicBoolean cancelled) {
+            this.zipFile = zipFile;
+            this.files = files;
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FILES_PER_TASK) {
+                for (Path target : targets.subList(from, to)) {
+                    if (cancelled.get()) {
+                        return;
+                    }
+                    try {
+                        extractFile(zipFile, files.get(target), target);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ExtractTask(zipFile, files, targets, from, middle, cancelled),
+                    new ExtractTask(zipFile, files, targets, middle, to, cancelled));
+        }
+    }
+
+    /**
+     * Extracts a tar archive file. Since a tar archive has no central directory, it is read a first time to check
+     * its entries.
+     */
+    private static void extractTar(Path archive, ArchiveFormat format, Path root) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(format.decompress(Files.newInputStream(archive)))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                if (isExtracted(entry)) {
+                    resolve(root, entry.getName());
+                    names.add(entry.getName());
+                }
+            }
+        }
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(format.decompress(Files.newInputStream(archive)))) {
+            extractTar(tar, root, wrappingDirectory(names).length());
+        }
+    }
+
+    private static void extractTar(TarArchiveInputStream tar, Path root, int strip) throws IOException {
+        TarArchiveEntry entry;
+        while ((entry = tar.getNextTarEntry()) != null) {
+            if (!isExtracted(entry)) {
+                LOGGER.log(Level.FINE, "Skipping {0}, which is neither a file nor a directory", entry.getName());
+                continue;
+            }
+            String name = entry.getName().substring(strip);
+            if (name.isEmpty()) {
+                continue;
+            }
+            Path target = resolve(root, name);
+            if (entry.isDirectory()) {
+                Files.createDirectories(target);
+            } else {
+                Files.createDirectories(target.getParent());
+                try (ExtractionBuffers buffers = ExtractionBuffers.acquire()) {
+                    buffers.copy(tar, target);
+                }
+                setAttributes(target, entry.getLastModifiedDate().getTime(), entry.getMode());
+            }
+        }
+    }
+
+    /**
+     * @return whether the entry is a directory or a regular file, the links and special files being skipped
+     */
+    private static boolean isExtracted(TarArchiveEntry entry) {
+        byte type = entry.getLinkFlag();
+        return entry.isDirectory()
+                || type == TarConstants.LF_NORMAL || type == TarConstants.LF_OLDNORM || type == TarConstants.LF_CONTIG;
+    }
+
+    /**
+     * Finds the single directory wrapping all the entries of an archive
+     *
+     * @param names names of all the entries
+     * @return the wrapping directory followed by a slash, or an empty string if there is none
+     */
+    @NonNull
+    static String wrappingDirectory(@NonNull List<String> names) {
+        String prefix = null;
+        boolean hasContent = false;
+        for (String name : names) {
+            int slash = name.indexOf('/');
+            if (slash <= 0) {
+                return "";
+            }
+            String directory = name.substring(0, slash + 1);
+            if (prefix == null) {
+                prefix = directory;
+            } else if (!prefix.equals(directory)) {
+                return "";
+            }
+            hasContent |= name.length() > directory.length();
+        }
+        if (prefix == null || !hasContent || LIBRARY_DIRECTORIES.contains(prefix.substring(0, prefix.length() - 1))) {
+            return "";
+        }
+        return prefix;
+    }
+
+    /**
+     * Extracts an archive while it is being read, without materializing it first.
+     * Each entry is checked before anything is written for it. Since the entries are not known in advance,
+     * a wrapping directory is not stripped.
+     *
+     * @param archive     the archive content, read until the end of the last entry but not closed
+     * @param format      the format of the archive
+     * @param destination directory where to extract the archive
+     * @throws IOException if the archive is invalid, contains unsafe entries or cannot be written
+     */
+    static void extract(@NonNull InputStream archive, @NonNull ArchiveFormat format, @NonNull Path destination)
+            throws IOException {
+        if (!format.isTar()) {
+            extract(archive, destination);
+            return;
+        }
+        Path root = destination.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        // Closed to release the decompressor, but not the archive content
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(
+                format.decompress(CloseShieldInputStream.wrap(archive)))) {
+            extractTar(tar, root, 0);
+        }
+    }
+
+    /**
+     * Extracts a zip archive while it is being read, without materializing it first.
+     * Each entry is checked before anything is written for it. Since the entries are not known in advance,
+     * a wrapping directory is not stripped. The entries stored with a data descriptor are supported.
+     * <p>
+     * The permissions of the files are only known from the central directory at the end of the archive: they are
+     * applied by {@link #setUnixModes(Path, Path)} once the archive is complete.
+     *
+     * @param zip         the archive content, read until the end of the last entry but not closed
+     * @param destination directory where to extract the archive
+     * @throws IOException if the archive is invalid, contains unsafe entries or cannot be written
+     */
+    static void extract(@NonNull InputStream zip, @NonNull Path destination) throws IOException {
+        Path root = destination.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        // Closed to release the inflater, but not the archive content
+        try (ZipArchiveInputStream zipInputStream = new ZipArchiveInputStream(CloseShieldInputStream.wrap(zip),
+                StandardCharsets.UTF_8.name(), true, true)) {
+            ZipArchiveEntry entry;
+            while ((entry = zipInputStream.getNextZipEntry()) != null) {
+                Path target = resolve(root, entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    try (ExtractionBuffers buffers = ExtractionBuffers.acquire()) {
+                        buffers.copy(zipInputStream, target);
+                    }
+                    setAttributes(target, entry.getTime(), 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the permissions stored in the central directory of a zip archive to its files extracted while it was
+     * read (see {@link #extract(InputStream, Path)})
+     *
+     * @param archive     the complete archive file
+     * @param destination directory where the archive was extracted, its wrapping directory not stripped yet
+     * @throws IOException if the archive cannot be read, or the permissions cannot be set
+     */
+    static void setUnixModes(@NonNull Path archive, @NonNull Path destination) throws IOException {
+        Path root = destination.toAbsolutePath().normalize();
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+                if (!entry.isDirectory()) {
+                    Path target = resolve(root, entry.getName());
+                    if (Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS)) {
+                        setAttributes(target, -1, entry.getUnixMode());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void setAttributes(Path file, long time, int unixMode) throws IOException {
+        if (time != -1) {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(time));
+        }
+        if ((unixMode & 0111) != 0) {
+            // Keep the scripts executable, as FilePath.unzip does
+            file.toFile().setExecutable(true, (unixMode & 0011) == 0);
+        }
+    }
+
+    /**
+     * Resolves the path of an entry, making sure it stays inside the extraction directory
+     *
+     * @param root absolute and normalized extraction directory
+     * @param name name of the entry
+     * @return where to extract the entry
+     * @throws IOException if the entry would be extracted outside of the extraction directory
+     */
+    static Path resolve(Path root, String name) throws IOException {
+        checkEntryName(name);
+        Path target = root.resolve(name).normalize();
+        if (!target.startsWith(root)) {
+            throw new IOException("Unsupported ZIP entry " + name + " that would be extracted outside of " + root);
+        }
+        return target;
+    }
+}
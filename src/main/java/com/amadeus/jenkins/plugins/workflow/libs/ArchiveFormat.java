@@ -0,0 +1,135 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import com.github.luben.zstd.ZstdInputStream;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The formats of the library archives.
+ * <p>
+ * The format of a download is given by its {@code Content-Type}, or by the extension of its file name when
+ * the server sends a generic type. The format of a file, such as a cached archive, is recognized from its
+ * first bytes.
+ */
+@Restricted(NoExternalUse.class)
+enum ArchiveFormat {
+
+    ZIP(List.of("application/zip", "application/x-zip-compressed"), List.of(".zip"),
+            new byte[] {'P', 'K', 3, 4}),
+
+    TAR_GZ(List.of("application/gzip", "application/x-gzip", "application/x-gtar", "application/x-compressed-tar"),
+            List.of(".tar.gz", ".tgz"), new byte[] {(byte) 0x1f, (byte) 0x8b}) {
+        @Override
+        InputStream decompress(InputStream in) throws IOException {
+            return new GzipCompressorInputStream(in, true);
+        }
+    },
+
+    TAR_ZSTD(List.of("application/zstd", "application/x-zstd", "application/x-zstd-compressed-tar"),
+            List.of(".tar.zst", ".tzst"), new byte[] {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd}) {
+        @Override
+        InputStream decompress(InputStream in) throws IOException {
+            try {
+                return new ZstdInputStream(in);
+            } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+                // zstd-jni ships native libraries for the common platforms only
+                in.close();
+                throw new IOException("Cannot extract the tar.zst archive: the zstd native library is not available on "
+                        + System.getProperty("os.name") + " " + System.getProperty("os.arch")
+                        + ", use a zip or tar.gz archive instead", e);
+            }
+        }
+    };
+
+    private static final int MAGIC_LENGTH = 4;
+
+    private final List<String> contentTypes;
+    private final List<String> extensions;
+    private final byte[] magic;
+
+    ArchiveFormat(List<String> contentTypes, List<String> extensions, byte[] magic) {
+        this.contentTypes = contentTypes;
+        this.extensions = extensions;
+        this.magic = magic;
+    }
+
+    /**
+     * @return whether the archive is a tar archive, read as a stream once decompressed
+     */
+    boolean isTar() {
+        return this != ZIP;
+    }
+
+    /**
+     * Decompresses a tar archive
+     *
+     * @param in the compressed archive
+     * @return the tar stream, closing the compressed archive when closed
+     * @throws IOException if the archive is not compressed as expected, or its compression is not supported on
+     *                     this platform
+     */
+    InputStream decompress(InputStream in) throws IOException {
+        return in;
+    }
+
+    /**
+     * Finds the format of a download
+     *
+     * @param contentType Content-Type header of the response, if any
+     * @param fileName    file name of the URL, if any
+     * @return the format, zip when neither the type nor the name is known
+     */
+    @NonNull
+    static ArchiveFormat of(@CheckForNull String contentType, @CheckForNull String fileName) {
+        if (contentType != null) {
+            String mimeType = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+            for (ArchiveFormat format : values()) {
+                if (format.contentTypes.contains(mimeType)) {
+                    return format;
+                }
+            }
+        }
+        if (fileName != null) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            for (ArchiveFormat format : values()) {
+                if (format.extensions.stream().anyMatch(name::endsWith)) {
+                    return format;
+                }
+            }
+        }
+        return ZIP;
+    }
+
+    /**
+     * Recognizes the format of an archive file
+     *
+     * @param archive the archive file
+     * @return the format, zip when it is not recognized
+     * @throws IOException if the file cannot be read
+     */
+    @NonNull
+    static ArchiveFormat of(@NonNull Path archive) throws IOException {
+        byte[] header;
+        try (InputStream in = Files.newInputStream(archive)) {
+            header = in.readNBytes(MAGIC_LENGTH);
+        }
+        for (ArchiveFormat format : values()) {
+            if (header.length >= format.magic.length
+                    && Arrays.equals(header, 0, format.magic.length, format.magic, 0, format.magic.length)) {
+                return format;
+            }
+        }
+        return ZIP;
+    }
+}
@@ -0,0 +1,127 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.protocol.HttpContext;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long to wait before retrying a failed request, shared by {@link CustomHttpRequestRetryHandler} and
+ * {@link CustomServiceUnavailableRetryStrategy}.
+ * <p>
+ * The delays grow exponentially and are drawn at random below that bound ("full jitter"), so that builds failing
+ * at the same moment do not all retry at the same moment. A {@code Retry-After} sent by the server is followed as
+ * is, unless it is longer than the maximum delay. No retry is made once the deadline, counted from the first
+ * failure of the request, would be passed, nor past the deadline of the whole download (see
+ * {@link DownloadWatchdog}).
+ */
+@Restricted(NoExternalUse.class)
+final class BackoffPolicy {
+
+    /**
+     * Attribute of the request context holding when its first retry was decided
+     */
+    private static final String FIRST_FAILURE = BackoffPolicy.class.getName() + ".firstFailure";
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long deadlineMillis;
+
+    /**
+     * @param maxRetries      maximum number of retries of a request
+     * @param baseDelayMillis upper bound of the delay before the first retry, doubled for each next retry
+     * @param maxDelayMillis  upper bound of any delay
+     * @param deadlineMillis  time after the first failure past which no retry is made, 0 for no deadline
+     */
+    BackoffPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis, long deadlineMillis) {
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = Math.max(baseDelayMillis, maxDelayMillis);
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * The policy set in a configuration
+     *
+     * @param configuration the configuration
+     * @return the policy
+     */
+    @NonNull
+    static BackoffPolicy of(@NonNull HttpRetrieverConfiguration configuration) {
+        return new BackoffPolicy(configuration.getMaxRetries(), configuration.getRetryBaseDelayMillis(),
+                configuration.getRetryMaxDelayMillis(), TimeUnit.SECONDS.toMillis(configuration.getRetryDeadlineSeconds()));
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+
+    long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    /**
+     * Decides whether a request is retried, and when
+     *
+     * @param retry           number of the retry, starting at 1
+     * @param retryAfterMillis delay asked by the server, or -1
+     * @param context         context of the request
+     * @return the delay before the retry, or -1 if the request must not be retried
+     */
+    long nextDelay(int retry, long retryAfterMillis, @NonNull HttpContext context) {
+        if (retry > maxRetries || retryAfterMillis > maxDelayMillis) {
+            return -1;
+        }
+        long now = System.currentTimeMillis();
+        Long firstFailure = (Long) context.getAttribute(FIRST_FAILURE);
+        if (firstFailure == null) {
+            firstFailure = now;
+            context.setAttribute(FIRST_FAILURE, firstFailure);
+        }
+        long delay = retryAfterMillis >= 0 ? retryAfterMillis : jitteredDelay(retry);
+        if (deadlineMillis > 0 && now + delay > firstFailure + deadlineMillis) {
+            return -1;
+        }
+        DownloadWatchdog watchdog = DownloadWatchdog.get(context);
+        if (watchdog != null && delay >= watchdog.remainingMillis()) {
+            return -1;
+        }
+        return delay;
+    }
+
+    /**
+     * A delay drawn uniformly between 0 and the exponential bound of the retry
+     */
+    long jitteredDelay(int retry) {
+        // No overflow: the bound is capped long before the shift gets that large
+        long bound = retry > 30 ? maxDelayMillis : Math.min(maxDelayMillis, baseDelayMillis << (retry - 1));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, given either in seconds or as an HTTP date
+     *
+     * @param value the value of the header, if any
+     * @param now   the current time
+     * @return the delay asked by the server, or -1 if none is given
+     */
+    static long parseRetryAfter(@CheckForNull String value, long now) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(trimmed);
+            return date == null ? -1 : Math.max(0, date.getTime() - now);
+        }
+    }
+}
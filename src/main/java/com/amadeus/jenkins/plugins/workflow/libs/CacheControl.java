@@ -0,0 +1,85 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.http.HeaderElement;
+import org.apache.http.message.BasicHeaderValueParser;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.Locale;
+
+/**
+ * The freshness directives of a {@code Cache-Control} response header that matter for library archives.
+ * <p>
+ * {@code immutable} (RFC 8246) is ignored: it only spares the revalidations a user forces within the freshness
+ * lifetime, which retrievals never do, so the max-age alone decides when an archive is revalidated.
+ */
+@Restricted(NoExternalUse.class)
+final class CacheControl {
+
+    /**
+     * No directive: the archive has to be revalidated on every retrieval
+     */
+    static final CacheControl NONE = new CacheControl(-1);
+
+    private final long maxAgeSeconds;
+
+    CacheControl(long maxAgeSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * Parses a Cache-Control header value. {@code no-cache} and {@code no-store} win over any other directive.
+     *
+     * @param value the header value, if any
+     * @return the directives
+     */
+    @NonNull
+    static CacheControl parse(@CheckForNull String value) {
+        if (value == null || value.isEmpty()) {
+            return NONE;
+        }
+        long maxAge = -1;
+        for (HeaderElement element : BasicHeaderValueParser.parseElements(value, null)) {
+            String name = element.getName().toLowerCase(Locale.ROOT);
+            switch (name) {
+                case "no-cache":
+                case "no-store":
+                    return new CacheControl(0);
+                case "max-age":
+                    maxAge = parseSeconds(element.getValue());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new CacheControl(maxAge);
+    }
+
+    /**
+     * @return how long the archive is fresh after it was validated, or -1 if the server did not say
+     */
+    long getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    /**
+     * Whether an archive validated at a given time can still be used without asking the server
+     *
+     * @param validatedAt when the archive was last validated, in milliseconds since the epoch
+     * @param now         the current time, in milliseconds since the epoch
+     * @return whether the archive is fresh
+     */
+    boolean isFresh(long validatedAt, long now) {
+        return maxAgeSeconds > 0 && now - validatedAt < maxAgeSeconds * 1000;
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return value == null ? -1 : Math.min(Math.max(0, Long.parseLong(value.trim())), Long.MAX_VALUE / 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
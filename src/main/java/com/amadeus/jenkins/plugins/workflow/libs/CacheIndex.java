@@ -0,0 +1,506 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent index of the {@link LibraryArchiveCache}: the cached archives with their validators, their size and
+ * when they were last used, and the size of the extracted trees.
+ * <p>
+ * It is an append-only log of records, replayed through a memory mapping when the cache is opened, so that the
+ * first retrievals after a restart are served without reading the cache directory. Each record is checksummed:
+ * a record partially written when the controller stopped ends the log. Once most of the records are obsolete,
+ * {@link #compactIfNeeded()} rewrites the log with the live ones only.
+ * <p>
+ * The accesses to the archives, one per retrieval, are only kept in memory until {@link #flushAccesses()}, called
+ * by the garbage collection of the cache: the last ones are lost when the controller stops, which only makes the
+ * eviction order slightly less accurate.
+ */
+@Restricted(NoExternalUse.class)
+final class CacheIndex implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(CacheIndex.class.getName());
+
+    static final String FILE_NAME = "index.log";
+
+    private static final int MAGIC = 0x484c4958;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_LENGTH = 8;
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    /**
+     * Logs shorter than that are not worth compacting
+     */
+    private static final long MIN_COMPACTION_LENGTH = 1024 * 1024;
+
+    private static final byte PUT = 1;
+    private static final byte ACCESS = 2;
+    private static final byte REMOVE = 3;
+    private static final byte PUT_TREE = 4;
+    private static final byte REMOVE_TREE = 5;
+
+    /**
+     * An indexed archive
+     */
+    static final class Entry {
+        private final CachedArchive archive;
+        private final long size;
+        private final long lastAccess;
+
+        Entry(@NonNull CachedArchive archive, long size, long lastAccess) {
+            this.archive = archive;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+
+        /**
+         * @return the cached archive
+         */
+        @NonNull
+        CachedArchive getArchive() {
+            return archive;
+        }
+
+        /**
+         * @return the size of the archive file, in bytes
+         */
+        long getSize() {
+            return size;
+        }
+
+        /**
+         * @return when the archive was last used, in milliseconds since the epoch
+         */
+        long getLastAccess() {
+            return lastAccess;
+        }
+    }
+
+    private final Path root;
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Long> trees = new ConcurrentHashMap<>();
+    private final Map<String, Long> pendingAccesses = new ConcurrentHashMap<>();
+    private final boolean created;
+    private FileChannel channel;
+    private long records;
+
+    private CacheIndex(Path root, boolean created) {
+        this.root = root;
+        this.file = root.resolve(FILE_NAME);
+        this.created = created;
+    }
+
+    /**
+     * Opens the index of a cache, replaying its log, or creating it if there is none
+     *
+     * @param root directory of the cache
+     * @return the index
+     * @throws IOException if the log cannot be read or is not an index
+     */
+    @NonNull
+    static CacheIndex open(@NonNull Path root) throws IOException {
+        Path file = root.resolve(FILE_NAME);
+        CacheIndex index = new CacheIndex(root, Files.notExists(file));
+        if (index.created) {
+            index.create();
+        } else {
+            index.replay();
+        }
+        return index;
+    }
+
+    /**
+     * @return whether there was no log, so that the index starts empty
+     */
+    boolean isCreated() {
+        return created;
+    }
+
+    private void create() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        writeFully(channel, header());
+    }
+
+    private void replay() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long length = channel.size();
+            long valid = readRecords(length);
+            if (valid < length) {
+                LOGGER.log(Level.WARNING, "Ignoring the {0} bytes at the end of {1}, which were not completely written",
+                        new Object[] {length - valid, file});
+                // Cut the incomplete record, so that no part of it is ever read back after the appended ones
+                channel.truncate(valid);
+            }
+            channel.position(valid);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Applies the complete records of the log
+     *
+     * @return the length of the log up to the end of the last complete record
+     */
+    private long readRecords(long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        try {
+            if (length < HEADER_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException(file + " is not a cache index");
+            }
+            long valid = buffer.position();
+            while (buffer.remaining() >= RECORD_HEADER_LENGTH) {
+                int recordLength = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (recordLength <= 0 || recordLength > buffer.remaining()) {
+                    break;
+                }
+                byte[] record = new byte[recordLength];
+                buffer.get(record);
+                if (checksum != checksum(record)) {
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(record)));
+                records++;
+                valid = buffer.position();
+            }
+            return valid;
+        } finally {
+            // A mapped file can be neither truncated nor replaced by a compaction on Windows
+            unmap(buffer);
+        }
+    }
+
+    /**
+     * Releases a mapping at once, instead of whenever it is garbage collected
+     */
+    private void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Cannot release the mapping of " + file + ", left to the garbage collector", e);
+        }
+    }
+
+    private void apply(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case PUT:
+                String key = in.readUTF();
+                String url = in.readUTF();
+                Path archive = root.resolve(key).resolve(in.readUTF());
+                String etag = readNullable(in);
+                String lastModified = readNullable(in);
+                String digest = readNullable(in);
+                CacheControl cacheControl = new CacheControl(in.readLong());
+                long validatedAt = in.readLong();
+                long size = in.readLong();
+                long lastAccess = in.readLong();
+                entries.put(key, new Entry(new CachedArchive(key, url, archive, etag, lastModified, digest,
+                        cacheControl, validatedAt), size, lastAccess));
+                break;
+            case ACCESS:
+                String accessed = in.readUTF();
+                long time = in.readLong();
+                entries.computeIfPresent(accessed, (k, entry) -> new Entry(entry.archive, entry.size, time));
+                break;
+            case REMOVE:
+                entries.remove(in.readUTF());
+                break;
+            case PUT_TREE:
+                trees.put(in.readUTF(), in.readLong());
+                break;
+            case REMOVE_TREE:
+                trees.remove(in.readUTF());
+                break;
+            default:
+                throw new IOException("Unknown record type " + type + " in " + file);
+        }
+    }
+
+    /**
+     * Looks up an archive
+     *
+     * @param key the cache key
+     * @return the indexed archive, or null if there is none
+     */
+    @CheckForNull
+    Entry get(@NonNull String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * @return all the indexed archives
+     */
+    @NonNull
+    Collection<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Indexes an archive, replacing the previous one for the same key
+     *
+     * @param archive    the cached archive
+     * @param size       size of the archive file, in bytes
+     * @param lastAccess when the archive was last used, in milliseconds since the epoch
+     * @throws IOException if the record cannot be written
+     */
+    synchronized void put(@NonNull CachedArchive archive, long size, long lastAccess) throws IOException {
+        Entry entry = new Entry(archive, size, lastAccess);
+        append(putRecord(entry));
+        entries.put(archive.getKey(), entry);
+    }
+
+    /**
+     * Records that an archive was used, in memory only until the accesses are flushed
+     *
+     * @param key  the cache key
+     * @param time when it was used, in milliseconds since the epoch
+     */
+    void accessed(@NonNull String key, long time) {
+        if (entries.computeIfPresent(key, (k, entry) -> new Entry(entry.archive, entry.size, time)) != null) {
+            pendingAccesses.merge(key, time, Math::max);
+        }
+    }
+
+    /**
+     * Writes the accesses recorded since the last flush, a single record per archive
+     *
+     * @throws IOException if the records cannot be written
+     */
+    synchronized void flushAccesses() throws IOException {
+        for (String key : pendingAccesses.keySet()) {
+            Long time = pendingAccesses.remove(key);
+            if (time != null && entries.containsKey(key)) {
+                append(record(out -> {
+                    out.writeByte(ACCESS);
+                    out.writeUTF(key);
+                    out.writeLong(time);
+                }));
+            }
+        }
+    }
+
+    /**
+     * Removes an archive from the index
+     *
+     * @param key the cache key
+     * @throws IOException if the record cannot be written
+     */
+    synchronized void remove(@NonNull String key) throws IOException {
+        if (entries.remove(key) != null) {
+            append(record(out -> {
+                out.writeByte(REMOVE);
+                out.writeUTF(key);
+            }));
+        }
+    }
+
+    /**
+     * @param digest digest of the tree
+     * @return the recorded size of the tree in bytes, or null if unknown
+     */
+    @CheckForNull
+    Long getTreeSize(@NonNull String digest) {
+        return trees.get(digest);
+    }
+
+    /**
+     * Records the size of an extracted tree
+     *
+     * @param digest digest of the tree
+     * @param size   size of its files, in bytes
+     * @throws IOException if the record cannot be written
+     */
+    synchronized void putTree(@NonNull String digest, long size) throws IOException {
+        append(putTreeRecord(digest, size));
+        trees.put(digest, size);
+    }
+
+    /**
+     * Forgets an extracted tree
+     *
+     * @param digest digest of the tree
+     * @throws IOException if the record cannot be written
+     */
+    synchronized void removeTree(@NonNull String digest) throws IOException {
+        if (trees.remove(digest) != null) {
+            append(record(out -> {
+                out.writeByte(REMOVE_TREE);
+                out.writeUTF(digest);
+            }));
+        }
+    }
+
+    /**
+     * Rewrites the log with the live records only, when most of its records are obsolete
+     *
+     * @return whether the log was compacted
+     * @throws IOException if the log cannot be rewritten
+     */
+    synchronized boolean compactIfNeeded() throws IOException {
+        long live = entries.size() + trees.size();
+        if (records <= 2 * live || channel.size() < MIN_COMPACTION_LENGTH) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    /**
+     * Rewrites the log with the live records only
+     *
+     * @throws IOException if the log cannot be rewritten
+     */
+    synchronized void compact() throws IOException {
+        // Written along with the entries, which hold the last accesses
+        pendingAccesses.clear();
+        Path tmp = Files.createTempFile(root, FILE_NAME, ".tmp");
+        try {
+            long live = 0;
+            try (FileChannel compacted = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                writeFully(compacted, header());
+                for (Entry entry : entries.values()) {
+                    write(compacted, putRecord(entry));
+                    live++;
+                }
+                for (Map.Entry<String, Long> tree : trees.entrySet()) {
+                    write(compacted, putTreeRecord(tree.getKey(), tree.getValue()));
+                    live++;
+                }
+                compacted.force(true);
+            }
+            channel.close();
+            LibraryArchiveCache.moveAtomically(tmp, file);
+            records = live;
+        } finally {
+            LibraryArchiveCache.deleteQuietly(tmp);
+            if (!channel.isOpen()) {
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flushAccesses();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the content of a record
+     */
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutput out) throws IOException;
+    }
+
+    private void append(byte[] record) throws IOException {
+        write(channel, record);
+        records++;
+    }
+
+    private static byte[] record(RecordWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] putRecord(Entry entry) throws IOException {
+        CachedArchive archive = entry.archive;
+        return record(out -> {
+            out.writeByte(PUT);
+            out.writeUTF(archive.getKey());
+            out.writeUTF(archive.getUrl());
+            out.writeUTF(archive.getArchive().getFileName().toString());
+            writeNullable(out, archive.getEtag());
+            writeNullable(out, archive.getLastModified());
+            writeNullable(out, archive.getDigest());
+            out.writeLong(archive.getCacheControl().getMaxAgeSeconds());
+            out.writeLong(archive.getValidatedAt());
+            out.writeLong(entry.size);
+            out.writeLong(entry.lastAccess);
+        });
+    }
+
+    private static byte[] putTreeRecord(String digest, long size) throws IOException {
+        return record(out -> {
+            out.writeByte(PUT_TREE);
+            out.writeUTF(digest);
+            out.writeLong(size);
+        });
+    }
+
+    private static void write(FileChannel target, byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH + record.length);
+        buffer.putInt(record.length).putInt(checksum(record)).put(record).flip();
+        writeFully(target, buffer);
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+        return header;
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
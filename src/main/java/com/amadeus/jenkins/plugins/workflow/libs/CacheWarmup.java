@@ -0,0 +1,218 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.libs.FolderLibraries;
+import org.jenkinsci.plugins.workflow.libs.GlobalLibraries;
+import org.jenkinsci.plugins.workflow.libs.LibraryConfiguration;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads the default versions of the libraries retrieved over HTTP into the controller cache once the jobs are
+ * loaded, so that the first builds after a restart do not all wait for their libraries.
+ * <p>
+ * Both the global libraries and the ones defined in folders are warmed up, in parallel on the background threads of
+ * the {@link DownloadScheduler}, after the downloads of the builds. The progress is shown on the
+ * {@link HttpRetrieverManagementLink management page}.
+ */
+@Restricted(NoExternalUse.class)
+public final class CacheWarmup {
+
+    private static final Logger LOGGER = Logger.getLogger(CacheWarmup.class.getName());
+
+    private static final CacheWarmup INSTANCE = new CacheWarmup();
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    /**
+     * The warmup of a version of a library
+     */
+    public static final class Entry {
+        private final String name;
+        private final String version;
+        private final AbstractFolder<?> folder;
+        private final HttpRetriever retriever;
+        private volatile Status status = Status.QUEUED;
+        private volatile String error;
+
+        Entry(String name, String version, AbstractFolder<?> folder, HttpRetriever retriever) {
+            this.name = name;
+            this.version = version;
+            this.folder = folder;
+            this.retriever = retriever;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the full name of the folder defining the library, or null for a global library
+         */
+        @CheckForNull
+        public String getFolder() {
+            return folder == null ? null : folder.getFullName();
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return why the warmup failed, if it did
+         */
+        @CheckForNull
+        public String getError() {
+            return error;
+        }
+
+        private Void run() {
+            status = Status.RUNNING;
+            try {
+                retriever.prefetch(name, version, folder, DownloadScheduler.Priority.BACKGROUND, TaskListener.NULL);
+                status = Status.DONE;
+            } catch (InterruptedException e) {
+                error = "Interrupted";
+                status = Status.FAILED;
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Failed to warm up the cache with " + name + "@" + version, e);
+                error = e.getMessage();
+                status = Status.FAILED;
+            }
+            return null;
+        }
+    }
+
+    private volatile List<Entry> entries = Collections.emptyList();
+    private volatile long startedAt;
+
+    CacheWarmup() {
+    }
+
+    /**
+     * @return the warmup of the controller
+     */
+    @NonNull
+    public static CacheWarmup get() {
+        return INSTANCE;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED, fatal = false)
+    public static void warmUpOnStartup() {
+        if (HttpRetrieverConfiguration.get().isCacheWarmup()) {
+            get().start();
+        }
+    }
+
+    /**
+     * Starts warming up the cache, unless caching is disabled or a warmup is already in progress
+     *
+     * @return whether the warmup started
+     */
+    public synchronized boolean start() {
+        if (isRunning() || !HttpRetrieverConfiguration.get().isCacheEnabled()) {
+            return false;
+        }
+        List<Entry> started = new ArrayList<>();
+        // Every folder must be seen, whoever asked for the warmup
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            GlobalLibraries globalLibraries = GlobalLibraries.get();
+            addLibraries(started, globalLibraries.getLibraries(), null);
+            for (AbstractFolder<?> folder : Jenkins.get().allItems(AbstractFolder.class)) {
+                FolderLibraries folderLibraries = folder.getProperties().get(FolderLibraries.class);
+                if (folderLibraries != null) {
+                    addLibraries(started, folderLibraries.getLibraries(), folder);
+                }
+            }
+        }
+        LOGGER.log(Level.INFO, "Warming up the cache with {0} HTTP shared libraries", started.size());
+        startedAt = System.currentTimeMillis();
+        entries = Collections.unmodifiableList(started);
+        DownloadScheduler scheduler = DownloadScheduler.get();
+        for (Entry entry : started) {
+            scheduler.submit(DownloadScheduler.Priority.BACKGROUND, entry::run);
+        }
+        return true;
+    }
+
+    private static void addLibraries(List<Entry> entries, List<LibraryConfiguration> libraries,
+                                     AbstractFolder<?> folder) {
+        for (LibraryConfiguration library : libraries) {
+            String defaultVersion = library.getDefaultVersion();
+            if (library.getRetriever() instanceof HttpRetriever && defaultVersion != null) {
+                entries.add(new Entry(library.getName(), defaultVersion, folder,
+                        (HttpRetriever) library.getRetriever()));
+            }
+        }
+    }
+
+    /**
+     * @return the libraries of the last warmup
+     */
+    @NonNull
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return when the last warmup started, 0 if none did
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return the number of libraries of the last warmup now in the cache
+     */
+    public int getDone() {
+        return count(Status.DONE);
+    }
+
+    /**
+     * @return the number of libraries of the last warmup that could not be downloaded
+     */
+    public int getFailed() {
+        return count(Status.FAILED);
+    }
+
+    private int count(Status status) {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.status == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return whether libraries of the last warmup are still queued or downloading
+     */
+    public boolean isRunning() {
+        return count(Status.QUEUED) + count(Status.RUNNING) > 0;
+    }
+}
@@ -0,0 +1,127 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.nio.file.Path;
+
+/**
+ * A library archive stored in the {@link LibraryArchiveCache}, with the validators the server sent along with it.
+ */
+@Restricted(NoExternalUse.class)
+final class CachedArchive {
+
+    private final String key;
+    private final String url;
+    private final Path archive;
+    private final String etag;
+    private final String lastModified;
+    private final String digest;
+    private final CacheControl cacheControl;
+    private final long validatedAt;
+
+    CachedArchive(@NonNull String key, @NonNull String url, @NonNull Path archive, @CheckForNull String etag,
+                  @CheckForNull String lastModified, @CheckForNull String digest, @NonNull CacheControl cacheControl,
+                  long validatedAt) {
+        this.key = key;
+        this.url = url;
+        this.archive = archive;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.digest = digest;
+        this.cacheControl = cacheControl;
+        this.validatedAt = validatedAt;
+    }
+
+    /**
+     * @return the cache key, derived from the resolved URL and the user used to download it
+     */
+    @NonNull
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the resolved URL the archive was downloaded from
+     */
+    @NonNull
+    String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the archive file itself
+     */
+    @NonNull
+    Path getArchive() {
+        return archive;
+    }
+
+    /**
+     * @return the ETag header sent by the server, if any
+     */
+    @CheckForNull
+    String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return the Last-Modified header sent by the server, if any
+     */
+    @CheckForNull
+    String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the SHA-256 of the archive as an hexadecimal string, unknown for the archives cached by older versions
+     */
+    @CheckForNull
+    String getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return the Cache-Control directives sent by the server
+     */
+    @NonNull
+    CacheControl getCacheControl() {
+        return cacheControl;
+    }
+
+    /**
+     * @return when the server last confirmed this archive was up-to-date, in milliseconds since the epoch
+     */
+    long getValidatedAt() {
+        return validatedAt;
+    }
+
+    /**
+     * @return whether the server gave a validator that allows a conditional request
+     */
+    boolean isRevalidable() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * @param now the current time, in milliseconds since the epoch
+     * @return whether the archive can be used without asking the server, according to its Cache-Control directives
+     */
+    boolean isFresh(long now) {
+        return cacheControl.isFresh(validatedAt, now);
+    }
+
+    CachedArchive withValidatedAt(long validatedAt) {
+        return new CachedArchive(key, url, archive, etag, lastModified, digest, cacheControl, validatedAt);
+    }
+
+    CachedArchive withCacheControl(@NonNull CacheControl cacheControl) {
+        return new CachedArchive(key, url, archive, etag, lastModified, digest, cacheControl, validatedAt);
+    }
+
+    CachedArchive withDigest(@NonNull String digest) {
+        return new CachedArchive(key, url, archive, etag, lastModified, digest, cacheControl, validatedAt);
+    }
+}
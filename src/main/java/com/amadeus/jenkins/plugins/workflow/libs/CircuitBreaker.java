@@ -0,0 +1,179 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops sending requests to a host that keeps failing, so that builds fail (or fall back to the cache) at once
+ * instead of each of them going through all the retries and timeouts.
+ * <p>
+ * The circuit of a host opens after a number of consecutive failures. Once it has been open for the configured
+ * duration, a single request is let through as a probe: its success closes the circuit, its failure opens it again
+ * for another period. The other requests are refused while the probe is in progress.
+ */
+@Restricted(NoExternalUse.class)
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Thrown instead of sending a request to a host whose circuit is open
+     */
+    static final class OpenCircuitException extends IOException {
+        OpenCircuitException(String host, long remainingMillis) {
+            super("Requests to " + host + " are suspended after repeated failures"
+                    + (remainingMillis > 0 ? " for " + TimeUnit.MILLISECONDS.toSeconds(remainingMillis + 999) + " s"
+                    : " until the request in progress succeeds"));
+        }
+    }
+
+    private static final CircuitBreaker INSTANCE = new CircuitBreaker(
+            () -> HttpRetrieverConfiguration.get().getCircuitBreakerFailureThreshold(),
+            () -> TimeUnit.SECONDS.toMillis(HttpRetrieverConfiguration.get().getCircuitBreakerOpenSeconds()));
+
+    private final IntSupplier failureThreshold;
+    private final LongSupplier openDurationMillis;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * @param failureThreshold   number of consecutive failures opening the circuit of a host, 0 to never open it
+     * @param openDurationMillis how long a circuit stays open before a probe request is let through
+     */
+    CircuitBreaker(@NonNull IntSupplier failureThreshold, @NonNull LongSupplier openDurationMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    /**
+     * @return the circuit breaker of the library hosts, shared by all the retrievers
+     */
+    @NonNull
+    static CircuitBreaker get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Asks for the permission to send a request to a host. Once given, the outcome of the request must be reported
+     * with {@link #onSuccess}, {@link #onFailure} or {@link #onAbandoned}.
+     *
+     * @param host the host
+     * @throws OpenCircuitException if the circuit of the host is open
+     */
+    void acquire(@NonNull String host) throws OpenCircuitException {
+        if (failureThreshold.getAsInt() <= 0) {
+            return;
+        }
+        Circuit circuit = circuits.computeIfAbsent(host, h -> new Circuit());
+        synchronized (circuit) {
+            if (circuit.state == State.CLOSED) {
+                return;
+            }
+            long remaining = circuit.openedAt + openDurationMillis.getAsLong() - System.currentTimeMillis();
+            if (circuit.state == State.OPEN && remaining <= 0) {
+                // This request is the probe
+                circuit.state = State.HALF_OPEN;
+                return;
+            }
+            throw new OpenCircuitException(host, circuit.state == State.OPEN ? remaining : 0);
+        }
+    }
+
+    /**
+     * Reports that the host answered properly, which closes its circuit
+     *
+     * @param host the host
+     */
+    void onSuccess(@NonNull String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit != null) {
+            synchronized (circuit) {
+                circuit.state = State.CLOSED;
+                circuit.consecutiveFailures = 0;
+            }
+        }
+    }
+
+    /**
+     * Reports that the host could not be reached or answered with a server error
+     *
+     * @param host the host
+     */
+    void onFailure(@NonNull String host) {
+        int threshold = failureThreshold.getAsInt();
+        if (threshold <= 0) {
+            return;
+        }
+        Circuit circuit = circuits.computeIfAbsent(host, h -> new Circuit());
+        synchronized (circuit) {
+            circuit.consecutiveFailures++;
+            if (circuit.state == State.HALF_OPEN
+                    || circuit.state == State.CLOSED && circuit.consecutiveFailures >= threshold) {
+                circuit.state = State.OPEN;
+                circuit.openedAt = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Reports that the request was stopped before the host answered, for reasons of its own. If it was the probe,
+     * the next request is let through as the probe instead.
+     *
+     * @param host the host
+     */
+    void onAbandoned(@NonNull String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit != null) {
+            synchronized (circuit) {
+                if (circuit.state == State.HALF_OPEN) {
+                    circuit.state = State.OPEN;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param host the host
+     * @return the state of the circuit of the host
+     */
+    @NonNull
+    State getState(@NonNull String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null) {
+            return State.CLOSED;
+        }
+        synchronized (circuit) {
+            return circuit.state;
+        }
+    }
+
+    /**
+     * @return the state of the circuit of each host requested since the controller started, by host
+     */
+    @NonNull
+    Map<String, State> getStates() {
+        Map<String, State> states = new TreeMap<>();
+        for (String host : circuits.keySet()) {
+            states.put(host, getState(host));
+        }
+        return states;
+    }
+
+    private static final class Circuit {
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+    }
+}
@@ -11,11 +11,9 @@ import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class CustomHttpRequestRetryHandler extends DefaultHttpRequestRetryHandler {
-    private static final int MAX_RETRIES = 2;
-    private static final int RETRY_INTERVAL_SECONDS = 3;
     // remove the SSLException from the default list of non-retriable exceptions since it could be a transient error
     private static final Set<Class<? extends IOException>> NON_RETRIABLE_CLASSES = new HashSet<>(Arrays.asList(
             InterruptedIOException.class,
@@ -24,24 +22,37 @@ public class CustomHttpRequestRetryHandler extends DefaultHttpRequestRetryHandle
             NoRouteToHostException.class
     ));
 
-    private final long retryIntervalMills;
+    private final Supplier<BackoffPolicy> backoffPolicy;
+    private final RetryBudget retryBudget;
 
     CustomHttpRequestRetryHandler() {
-        super(MAX_RETRIES, false, NON_RETRIABLE_CLASSES);
-        this.retryIntervalMills = TimeUnit.SECONDS.toMillis(RETRY_INTERVAL_SECONDS);
+        this(() -> BackoffPolicy.of(HttpRetrieverConfiguration.get()), RetryBudget.get());
+    }
+
+    CustomHttpRequestRetryHandler(Supplier<BackoffPolicy> backoffPolicy, RetryBudget retryBudget) {
+        // The number of retries is checked against the backoff policy, which can change at runtime
+        super(Integer.MAX_VALUE, false, NON_RETRIABLE_CLASSES);
+        this.backoffPolicy = backoffPolicy;
+        this.retryBudget = retryBudget;
     }
 
     @Override
     public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
-        boolean shouldRetry = super.retryRequest(exception, executionCount, context);
-        if (shouldRetry) {
-            try {
-                Thread.sleep(retryIntervalMills);
-            } catch (InterruptedException e) {
-                // Restore the interrupted status
-                Thread.currentThread().interrupt();
-            }
+        BackoffPolicy policy = backoffPolicy.get();
+        if (executionCount > policy.getMaxRetries() || !super.retryRequest(exception, executionCount, context)) {
+            return false;
+        }
+        long delay = policy.nextDelay(executionCount, -1, context);
+        if (delay < 0 || !retryBudget.tryRetry(RetryBudget.targetHost(context))) {
+            return false;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            // Restore the interrupted status
+            Thread.currentThread().interrupt();
+            return false;
         }
-        return shouldRetry;
+        return true;
     }
 }
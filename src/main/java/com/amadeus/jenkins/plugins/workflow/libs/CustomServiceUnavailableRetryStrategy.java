@@ -1,5 +1,7 @@
 package com.amadeus.jenkins.plugins.workflow.libs;
 
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.ServiceUnavailableRetryStrategy;
@@ -9,39 +11,76 @@ import org.apache.http.util.Args;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class CustomServiceUnavailableRetryStrategy implements ServiceUnavailableRetryStrategy {
-    private static final int MAX_RETRIES = 2;
-    private static final int RETRY_INTERVAL_SECONDS = 3;
 
-    private final long retryInterval;
-
-    private Set<Integer> retryOnStatusCodes = new HashSet<>(Arrays.asList(
+    private static final Set<Integer> DEFAULT_RETRY_ON_STATUS_CODES = new HashSet<>(Arrays.asList(
             HttpStatus.SC_REQUEST_TIMEOUT,
+            HttpStatus.SC_TOO_MANY_REQUESTS,
             HttpStatus.SC_INTERNAL_SERVER_ERROR,
             HttpStatus.SC_BAD_GATEWAY,
             HttpStatus.SC_SERVICE_UNAVAILABLE,
             HttpStatus.SC_GATEWAY_TIMEOUT
     ));
 
+    private final Supplier<BackoffPolicy> backoffPolicy;
+    private final RetryBudget retryBudget;
+
+    /**
+     * Delay decided by the last call to {@link #retryRequest} of each thread, which the client asks right after
+     */
+    private final ThreadLocal<Long> retryInterval = new ThreadLocal<>();
+
+    private final Set<Integer> retryOnStatusCodes;
+
     public CustomServiceUnavailableRetryStrategy() {
-        this.retryInterval = TimeUnit.SECONDS.toMillis(RETRY_INTERVAL_SECONDS);
+        this(() -> BackoffPolicy.of(HttpRetrieverConfiguration.get()), RetryBudget.get(), DEFAULT_RETRY_ON_STATUS_CODES);
     }
 
     public CustomServiceUnavailableRetryStrategy(Set<Integer> retryOnStatusCodes) {
-        this();
-        Args.notNull(retryOnStatusCodes, "retryOnStatusCodes");
+        this(() -> BackoffPolicy.of(HttpRetrieverConfiguration.get()), RetryBudget.get(),
+                Args.notNull(retryOnStatusCodes, "retryOnStatusCodes"));
+    }
+
+    private CustomServiceUnavailableRetryStrategy(Supplier<BackoffPolicy> backoffPolicy, RetryBudget retryBudget,
+                                                  Set<Integer> retryOnStatusCodes) {
+        this.backoffPolicy = backoffPolicy;
+        this.retryBudget = retryBudget;
         this.retryOnStatusCodes = retryOnStatusCodes;
     }
 
+    /**
+     * A strategy retrying the default status codes with a given backoff policy and retry budget
+     *
+     * @param backoffPolicy supplies the policy in use when a request fails
+     * @param retryBudget   the budget the retries are taken from
+     * @return the strategy
+     */
+    static CustomServiceUnavailableRetryStrategy of(Supplier<BackoffPolicy> backoffPolicy, RetryBudget retryBudget) {
+        return new CustomServiceUnavailableRetryStrategy(backoffPolicy, retryBudget, DEFAULT_RETRY_ON_STATUS_CODES);
+    }
+
     @Override
     public boolean retryRequest(HttpResponse httpResponse, int executionCount, HttpContext httpContext) {
-        return executionCount <= MAX_RETRIES && retryOnStatusCodes.contains(httpResponse.getStatusLine().getStatusCode());
+        if (!retryOnStatusCodes.contains(httpResponse.getStatusLine().getStatusCode())) {
+            return false;
+        }
+        Header retryAfter = httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        long delay = backoffPolicy.get().nextDelay(executionCount,
+                BackoffPolicy.parseRetryAfter(retryAfter == null ? null : retryAfter.getValue(),
+                        System.currentTimeMillis()), httpContext);
+        if (delay < 0 || !retryBudget.tryRetry(RetryBudget.targetHost(httpContext))) {
+            return false;
+        }
+        retryInterval.set(delay);
+        return true;
     }
 
     @Override
     public long getRetryInterval() {
-        return retryInterval;
+        Long interval = retryInterval.get();
+        retryInterval.remove();
+        return interval == null ? backoffPolicy.get().getBaseDelayMillis() : interval;
     }
 }
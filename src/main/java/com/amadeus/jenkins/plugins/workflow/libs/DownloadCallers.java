@@ -0,0 +1,139 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.TaskListener;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The callers needing the same archive at the same time, which share a single download (see {@link SingleFlight}).
+ * The download runs for the most urgent of them: with its priority, and logging to its listener.
+ * <p>
+ * A build joining a background download, such as a prefetch, thus raises it to the priority of the builds instead of
+ * waiting behind the other builds within the share of the background downloads (see {@link AdmissionControl}), and
+ * follows its progress in its log.
+ */
+@Restricted(NoExternalUse.class)
+final class DownloadCallers {
+
+    private static final Map<String, DownloadCallers> BY_KEY = new HashMap<>();
+
+    private final String key;
+    private final List<Caller> callers = new ArrayList<>();
+    private final TaskListener listener = () -> {
+        Caller mostUrgent = mostUrgent();
+        return (mostUrgent == null ? TaskListener.NULL : mostUrgent.listener).getLogger();
+    };
+
+    private DownloadCallers(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Registers a caller needing an archive
+     *
+     * @param key      the cache key of the archive
+     * @param priority the priority of the caller
+     * @param listener where the caller logs the retrieval
+     * @return the caller, to close once it no longer waits for the download
+     */
+    @NonNull
+    static Caller join(@NonNull String key, @NonNull DownloadScheduler.Priority priority,
+                       @NonNull TaskListener listener) {
+        synchronized (BY_KEY) {
+            DownloadCallers downloadCallers = BY_KEY.computeIfAbsent(key, DownloadCallers::new);
+            Caller mostUrgent = downloadCallers.mostUrgent();
+            Caller caller = downloadCallers.new Caller(priority, listener,
+                    mostUrgent != null && priority.compareTo(mostUrgent.priority) < 0);
+            downloadCallers.callers.add(caller);
+            return caller;
+        }
+    }
+
+    /**
+     * @return the priority of the most urgent caller, the lowest one once they are all gone
+     */
+    @NonNull
+    DownloadScheduler.Priority getPriority() {
+        Caller mostUrgent = mostUrgent();
+        return mostUrgent == null ? DownloadScheduler.Priority.BACKGROUND : mostUrgent.priority;
+    }
+
+    /**
+     * @return a listener logging to the one of the most urgent caller, or nowhere once they are all gone
+     */
+    @NonNull
+    TaskListener getListener() {
+        return listener;
+    }
+
+    /**
+     * The first one of the most urgent callers, as it is the most likely to be the one the download started for
+     */
+    @CheckForNull
+    private Caller mostUrgent() {
+        synchronized (BY_KEY) {
+            Caller mostUrgent = null;
+            for (Caller caller : callers) {
+                if (mostUrgent == null || caller.priority.compareTo(mostUrgent.priority) < 0) {
+                    mostUrgent = caller;
+                }
+            }
+            return mostUrgent;
+        }
+    }
+
+    /**
+     * A caller needing the archive
+     */
+    final class Caller implements AutoCloseable {
+        private final DownloadScheduler.Priority priority;
+        private final TaskListener listener;
+        private final boolean raised;
+        private boolean closed;
+
+        private Caller(DownloadScheduler.Priority priority, TaskListener listener, boolean raised) {
+            this.priority = priority;
+            this.listener = listener;
+            this.raised = raised;
+        }
+
+        /**
+         * @return all the callers needing the archive
+         */
+        @NonNull
+        DownloadCallers getCallers() {
+            return DownloadCallers.this;
+        }
+
+        /**
+         * @return whether this caller raised the priority of the download
+         */
+        boolean hasRaisedPriority() {
+            return raised;
+        }
+
+        /**
+         * Stops waiting for the download
+         */
+        @Override
+        public void close() {
+            synchronized (BY_KEY) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                callers.remove(this);
+                if (callers.isEmpty()) {
+                    BY_KEY.remove(key, DownloadCallers.this);
+                }
+            }
+        }
+    }
+}
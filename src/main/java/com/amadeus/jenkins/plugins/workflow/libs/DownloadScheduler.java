@@ -0,0 +1,139 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Schedules the HTTP requests of the retrievers by priority, so that the background work, such as prefetching
+ * archives into the cache, never competes equally with the builds waiting for their libraries.
+ * <p>
+ * The requests sent for the builds and for the validation of the configuration pages are sent by the threads
+ * waiting for them. The background work runs on a bounded pool of worker threads, which takes the queued tasks by
+ * priority, then in order of submission. Whatever the thread, each request then waits for its turn among the ones to
+ * the same host by priority (see {@link AdmissionControl}).
+ */
+@Restricted(NoExternalUse.class)
+final class DownloadScheduler {
+
+    /**
+     * Priorities of the requests, the most urgent first
+     */
+    enum Priority {
+        /**
+         * A build is waiting for the library
+         */
+        BUILD,
+        /**
+         * A user is waiting for the validation of a library version in a configuration page
+         */
+        VALIDATION,
+        /**
+         * Nobody is waiting, such as when prefetching archives into the cache
+         */
+        BACKGROUND
+    }
+
+    private static final DownloadScheduler INSTANCE = new DownloadScheduler(
+            () -> HttpRetrieverConfiguration.get().getBackgroundDownloadThreads());
+
+    private final IntSupplier threads;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong submissions = new AtomicLong();
+
+    /**
+     * @param threads maximum number of background tasks running at the same time
+     */
+    DownloadScheduler(@NonNull IntSupplier threads) {
+        this.threads = threads;
+        // The threads are created on demand up to the core size, as the queue is unbounded, and end once idle
+        this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "HTTP library background download");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the scheduler shared by all the retrievers
+     */
+    @NonNull
+    static DownloadScheduler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues a task for the worker threads
+     *
+     * @param priority the priority of the task, typically {@link Priority#BACKGROUND}
+     * @param task     the task
+     * @param <T>      type of the result
+     * @return the result of the task, to come
+     */
+    @NonNull
+    <T> Future<T> submit(@NonNull Priority priority, @NonNull Callable<T> task) {
+        resize();
+        Task<T> queued = new Task<>(task, priority, submissions.getAndIncrement());
+        executor.execute(queued);
+        return queued;
+    }
+
+    /**
+     * @return the number of tasks waiting for a worker thread
+     */
+    int getQueuedTasks() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of tasks running
+     */
+    int getRunningTasks() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Follows the configured number of threads, which can change at runtime
+     */
+    private synchronized void resize() {
+        int size = Math.max(1, threads.getAsInt());
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else if (size < executor.getMaximumPoolSize()) {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * A queued task, ordered by priority then by submission
+     */
+    private static final class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+        private final Priority priority;
+        private final long submission;
+
+        Task(Callable<T> callable, Priority priority, long submission) {
+            super(callable);
+            this.priority = priority;
+            this.submission = submission;
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(submission, other.submission);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds how long the download of an archive can take.
+ * <p>
+ * Each request has connect and read timeouts, which end the connections where nothing arrives anymore. The transfer
+ * of the content must also keep a minimum rate over a window of time: a transfer trickling a few bytes at a time,
+ * which no read timeout ever ends, is given up and resumed from a new connection like a broken one (see
+ * {@link ResumableInputStream}). Finally, the whole download, retries and resumes included, must end before a
+ * deadline.
+ * <p>
+ * A watchdog is made for each download and attached to the context of its requests. It is used by the single
+ * thread reading the content.
+ */
+@Restricted(NoExternalUse.class)
+final class DownloadWatchdog {
+
+    /**
+     * Attribute of the request context holding the watchdog of the download
+     */
+    private static final String ATTRIBUTE = DownloadWatchdog.class.getName();
+
+    /**
+     * Thrown when the content is received too slowly
+     */
+    static final class TooSlowException extends IOException {
+        TooSlowException(long bytes, long millis, long minBytesPerSecond) {
+            super("Received " + bytes + " bytes in " + millis + " ms, below the minimum of " + minBytesPerSecond
+                    + " bytes per second");
+        }
+    }
+
+    /**
+     * Thrown when the download lasts longer than allowed, which ends it without any retry
+     */
+    static final class DeadlineExceededException extends IOException {
+        DeadlineExceededException(long timeoutMillis) {
+            super("The download did not complete within " + TimeUnit.MILLISECONDS.toSeconds(timeoutMillis) + " s");
+        }
+    }
+
+    private final long connectTimeoutMillis;
+    private final long readTimeoutMillis;
+    private final long minBytesPerSecond;
+    private final long windowNanos;
+    private final long timeoutMillis;
+    private final long deadline;
+
+    private long windowStart;
+    private long windowPosition;
+
+    /**
+     * Starts the watchdog of a download
+     *
+     * @param connectTimeoutMillis maximum duration of the connection to the server, and of the wait for a pooled one
+     * @param readTimeoutMillis    maximum duration without receiving anything from the server
+     * @param minBytesPerSecond    minimum transfer rate of the content, 0 for no minimum
+     * @param windowMillis         duration over which the transfer rate is measured
+     * @param timeoutMillis        maximum duration of the download, 0 for no limit
+     */
+    DownloadWatchdog(long connectTimeoutMillis, long readTimeoutMillis, long minBytesPerSecond, long windowMillis,
+                     long timeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.minBytesPerSecond = minBytesPerSecond;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.timeoutMillis = timeoutMillis;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        restart(0);
+    }
+
+    /**
+     * Starts the watchdog of a download with the limits set in a configuration
+     *
+     * @param configuration the configuration
+     * @return the watchdog
+     */
+    @NonNull
+    static DownloadWatchdog of(@NonNull HttpRetrieverConfiguration configuration) {
+        return new DownloadWatchdog(TimeUnit.SECONDS.toMillis(configuration.getConnectTimeoutSeconds()),
+                TimeUnit.SECONDS.toMillis(configuration.getReadTimeoutSeconds()),
+                configuration.getMinDownloadBytesPerSecond(),
+                TimeUnit.SECONDS.toMillis(configuration.getLowDownloadRateSeconds()),
+                TimeUnit.SECONDS.toMillis(configuration.getDownloadTimeoutSeconds()));
+    }
+
+    /**
+     * @param context context of a request
+     * @return the watchdog attached to the context, if any
+     */
+    @CheckForNull
+    static DownloadWatchdog get(@NonNull HttpContext context) {
+        return (DownloadWatchdog) context.getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * Applies the timeouts to the requests sent with a context, and attaches the watchdog to it
+     *
+     * @param context context of the requests of the download
+     * @throws DeadlineExceededException if the download already lasted too long
+     */
+    void attachTo(@NonNull HttpClientContext context) throws DeadlineExceededException {
+        long remaining = remainingMillis();
+        if (remaining <= 0) {
+            throw deadlineExceeded();
+        }
+        context.setRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout(connectTimeoutMillis, remaining))
+                .setConnectTimeout(timeout(connectTimeoutMillis, remaining))
+                .setSocketTimeout(timeout(readTimeoutMillis, remaining))
+                .build());
+        context.setAttribute(ATTRIBUTE, this);
+    }
+
+    /**
+     * @return the time left before the deadline of the download, {@link Long#MAX_VALUE} if there is no deadline
+     */
+    long remainingMillis() {
+        if (timeoutMillis <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
+    /**
+     * @return the failure of a download that lasted too long
+     */
+    @NonNull
+    DeadlineExceededException deadlineExceeded() {
+        return new DeadlineExceededException(timeoutMillis);
+    }
+
+    /**
+     * Starts measuring the transfer rate again, typically on a new connection
+     *
+     * @param position number of bytes of the content already received
+     */
+    void restart(long position) {
+        windowStart = System.nanoTime();
+        windowPosition = position;
+    }
+
+    /**
+     * Checks the download before reading more of its content
+     *
+     * @param position number of bytes of the content already received
+     * @throws TooSlowException          if the transfer rate stayed below the minimum over the last window
+     * @throws DeadlineExceededException if the download lasts too long
+     */
+    void check(long position) throws IOException {
+        if (remainingMillis() <= 0) {
+            throw deadlineExceeded();
+        }
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (minBytesPerSecond <= 0 || elapsed < windowNanos) {
+            return;
+        }
+        long bytes = position - windowPosition;
+        if (bytes * TimeUnit.SECONDS.toNanos(1) < minBytesPerSecond * elapsed) {
+            HttpRetrieverMetrics.increment(HttpRetrieverMetrics.Metric.SLOW_DOWNLOADS);
+            throw new TooSlowException(bytes, TimeUnit.NANOSECONDS.toMillis(elapsed), minBytesPerSecond);
+        }
+        windowStart = now;
+        windowPosition = position;
+    }
+
+    /**
+     * A timeout of the client, where 0 means none, capped by the time left
+     */
+    private static int timeout(long millis, long remaining) {
+        long capped = millis <= 0 ? remaining : Math.min(millis, remaining);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, capped));
+    }
+}
@@ -0,0 +1,134 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * The buffers and the {@link Inflater} used to write the files of an archive, reused across extractions instead of
+ * being allocated for each file: an inflater holds native memory until it is ended, and a burst of retrievals
+ * would otherwise allocate and release it for every file of every library.
+ * <p>
+ * Acquired with {@link #acquire()} and given back by closing them. At most {@link #POOL_SIZE} idle instances are
+ * kept; the extra ones are released when closed.
+ */
+@Restricted(NoExternalUse.class)
+final class ExtractionBuffers implements Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final Queue<ExtractionBuffers> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private ExtractionBuffers() {
+    }
+
+    /**
+     * Takes idle buffers from the pool, or creates new ones
+     *
+     * @return buffers to close once the file is written
+     */
+    @NonNull
+    static ExtractionBuffers acquire() {
+        ExtractionBuffers buffers = POOL.poll();
+        return buffers == null ? new ExtractionBuffers() : buffers;
+    }
+
+    /**
+     * Writes the content of a file, replacing the existing file if any by a new one
+     *
+     * @param in     the content of the file, not closed
+     * @param target the file to write
+     * @throws IOException if the content cannot be read or the file cannot be written
+     */
+    void copy(@NonNull InputStream in, @NonNull Path target) throws IOException {
+        try (FileChannel out = create(target)) {
+            int read;
+            while ((read = in.read(input)) >= 0) {
+                write(out, ByteBuffer.wrap(input, 0, read));
+            }
+        }
+    }
+
+    /**
+     * Inflates the content of a deflated zip entry into a file, replacing the existing file if any by a new one
+     *
+     * @param raw    the compressed content of the entry, not closed
+     * @param target the file to write
+     * @throws IOException if the content is not valid deflated data or the file cannot be written
+     */
+    void inflate(@NonNull InputStream raw, @NonNull Path target) throws IOException {
+        inflater.reset();
+        boolean padded = false;
+        try (FileChannel out = create(target)) {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    int read = raw.read(input);
+                    if (read < 0) {
+                        if (padded) {
+                            throw new EOFException("Unexpected end of the compressed content of " + target.getFileName());
+                        }
+                        // The inflater may need one more byte to complete the raw deflate stream
+                        input[0] = 0;
+                        read = 1;
+                        padded = true;
+                    }
+                    inflater.setInput(input, 0, read);
+                }
+                output.clear();
+                if (inflater.inflate(output) == 0 && inflater.needsDictionary()) {
+                    throw new ZipException("Unsupported preset dictionary in " + target.getFileName());
+                }
+                output.flip();
+                write(out, output);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed content of " + target.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gives the buffers back to the pool
+     */
+    @Override
+    public void close() {
+        inflater.reset();
+        if (!POOL.offer(this)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Creates a new file, so that the files hard-linked to the previous one are left untouched
+     */
+    private static FileChannel create(Path target) throws IOException {
+        Files.deleteIfExists(target);
+        return FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends a request to the mirrors of a library one after the other, until one of them answers properly.
+ * <p>
+ * With a hedging delay, the next mirror does not wait for the previous one to fail: when a mirror has not answered
+ * within that delay, the request is also sent to the next mirror, and the first proper answer wins. The requests
+ * that lost the race are aborted, and their responses closed if they arrive anyway.
+ */
+@Restricted(NoExternalUse.class)
+final class HedgedRequests {
+
+    private static final Logger LOGGER = Logger.getLogger(HedgedRequests.class.getName());
+
+    /**
+     * Threads sending the hedged requests, created on demand and ended once idle for a minute
+     */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "HTTP library hedged request");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The request to one of the mirrors
+     *
+     * @param <T> type of the answer
+     */
+    interface Attempt<T extends Closeable> {
+
+        /**
+         * Sends the request
+         *
+         * @return the answer, which the caller closes
+         * @throws IOException if the mirror could not be reached or did not answer properly
+         */
+        @NonNull
+        T send() throws IOException;
+
+        /**
+         * Aborts the request while it is sent by another thread
+         */
+        void abort();
+    }
+
+    private HedgedRequests() {
+    }
+
+    /**
+     * Sends a request to the mirrors, in order
+     *
+     * @param attempts         the request to each mirror, at least one
+     * @param hedgeDelayMillis how long to wait for a mirror before also sending the request to the next one,
+     *                         0 to wait for it to fail
+     * @param <T>              type of the answer
+     * @return the first proper answer
+     * @throws IOException          the failure of the first mirror, with the ones of the others suppressed, if none
+     *                              of them answered properly
+     * @throws InterruptedException if the current thread was interrupted while waiting for the mirrors
+     */
+    @NonNull
+    static <T extends Closeable> T first(@NonNull List<? extends Attempt<T>> attempts, long hedgeDelayMillis)
+            throws IOException, InterruptedException {
+        if (attempts.size() == 1 || hedgeDelayMillis <= 0) {
+            return sequentially(attempts);
+        }
+        return hedged(attempts, hedgeDelayMillis);
+    }
+
+    private static <T extends Closeable> T sequentially(List<? extends Attempt<T>> attempts) throws IOException {
+        IOException failure = null;
+        for (Attempt<T> attempt : attempts) {
+            if (failure != null) {
+                HttpRetrieverMetrics.increment(HttpRetrieverMetrics.Metric.MIRROR_FAILOVERS);
+            }
+            try {
+                return attempt.send();
+            } catch (IOException e) {
+                failure = addFailure(failure, e);
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+            }
+        }
+        throw failure;
+    }
+
+    private static <T extends Closeable> T hedged(List<? extends Attempt<T>> attempts, long hedgeDelayMillis)
+            throws IOException, InterruptedException {
+        CompletionService<T> completion = new ExecutorCompletionService<>(EXECUTOR);
+        List<Race<T>> races = new ArrayList<>();
+        // Indexed like the attempts, so that the failure thrown does not depend on the order they completed in
+        IOException[] failures = new IOException[attempts.size()];
+        Race<T> winner = null;
+        try {
+            int running = 0;
+            while (true) {
+                if (running == 0) {
+                    if (races.size() == attempts.size()) {
+                        throw inOrder(failures);
+                    }
+                    if (!races.isEmpty()) {
+                        HttpRetrieverMetrics.increment(HttpRetrieverMetrics.Metric.MIRROR_FAILOVERS);
+                    }
+                    races.add(new Race<>(attempts.get(races.size()), completion));
+                    running++;
+                }
+                Future<T> done = races.size() < attempts.size()
+                        ? completion.poll(hedgeDelayMillis, TimeUnit.MILLISECONDS) : completion.take();
+                if (done == null) {
+                    LOGGER.log(Level.FINE, "No answer of mirror {0} after {1} ms, also requesting the next one",
+                            new Object[]{races.size() - 1, hedgeDelayMillis});
+                    HttpRetrieverMetrics.increment(HttpRetrieverMetrics.Metric.HEDGED_REQUESTS);
+                    races.add(new Race<>(attempts.get(races.size()), completion));
+                    running++;
+                    continue;
+                }
+                running--;
+                int index = indexOf(races, done);
+                try {
+                    T answer = done.get();
+                    winner = races.get(index);
+                    return answer;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    failures[index] = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            }
+        } finally {
+            for (Race<T> race : races) {
+                if (race != winner) {
+                    race.abandon();
+                }
+            }
+        }
+    }
+
+    private static <T extends Closeable> int indexOf(List<Race<T>> races, Future<T> done) {
+        for (int i = 0; i < races.size(); i++) {
+            if (races.get(i).future == done) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Unknown request completed");
+    }
+
+    /**
+     * @return the failure of the first mirror, with the ones of the next mirrors suppressed in order
+     */
+    private static IOException inOrder(IOException[] failures) {
+        IOException failure = null;
+        for (IOException e : failures) {
+            failure = addFailure(failure, e);
+        }
+        return failure;
+    }
+
+    private static IOException addFailure(@CheckForNull IOException failure, @NonNull IOException e) {
+        if (failure == null) {
+            return e;
+        }
+        failure.addSuppressed(e);
+        return failure;
+    }
+
+    /**
+     * The request to a mirror, sent by a thread of the pool
+     */
+    private static final class Race<T extends Closeable> implements Callable<T> {
+        private final Attempt<T> attempt;
+        private final Future<T> future;
+        private boolean abandoned;
+        private T answer;
+
+        Race(Attempt<T> attempt, CompletionService<T> completion) {
+            this.attempt = attempt;
+            this.future = completion.submit(this);
+        }
+
+        @Override
+        public T call() throws IOException {
+            T sent = attempt.send();
+            synchronized (this) {
+                if (!abandoned) {
+                    answer = sent;
+                    return sent;
+                }
+            }
+            sent.close();
+            throw new InterruptedIOException("Request abandoned for another mirror");
+        }
+
+        /**
+         * Stops the request, or closes its answer if it already arrived
+         */
+        void abandon() {
+            T sent;
+            synchronized (this) {
+                abandoned = true;
+                sent = answer;
+                answer = null;
+            }
+            if (sent == null) {
+                attempt.abort();
+                future.cancel(true);
+                return;
+            }
+            try {
+                sent.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close an abandoned answer", e);
+            }
+        }
+    }
+}
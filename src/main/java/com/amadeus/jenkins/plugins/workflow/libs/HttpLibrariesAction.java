@@ -0,0 +1,105 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the libraries a build retrieved over HTTP, so that they can be prefetched when the next build of its job
+ * enters the queue (see {@link QueuePrefetcher}). Saved with the build, so that it outlives a restart.
+ * <p>
+ * Only recorded when {@link HttpRetrieverConfiguration#isQueuePrefetch()} is enabled.
+ */
+@Restricted(NoExternalUse.class)
+public final class HttpLibrariesAction extends InvisibleAction {
+
+    /**
+     * A version of a library retrieved by the build
+     */
+    public static final class Library {
+        private final String scope;
+        private final String name;
+        private final String version;
+
+        Library(String scope, String name, String version) {
+            this.scope = scope;
+            this.name = name;
+            this.version = version;
+        }
+
+        /**
+         * @return the full name of the folder defining the library, empty for a global library, or null if recorded
+         * by a version which did not record it
+         */
+        @CheckForNull
+        public String getScope() {
+            return scope;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        @Override
+        public String toString() {
+            return name + "@" + version;
+        }
+    }
+
+    private final List<Library> libraries = new ArrayList<>();
+
+    /**
+     * Records that a build retrieved a library
+     *
+     * @param run     the build
+     * @param scope   the full name of the folder defining the library, empty for a global library
+     * @param name    name of the library
+     * @param version version of the library
+     */
+    static void record(@NonNull Run<?, ?> run, @NonNull String scope, @NonNull String name,
+                       @NonNull String version) {
+        HttpLibrariesAction action;
+        // The libraries of a build can be retrieved concurrently, by parallel library steps
+        synchronized (run) {
+            action = run.getAction(HttpLibrariesAction.class);
+            if (action == null) {
+                action = new HttpLibrariesAction();
+                run.addAction(action);
+            }
+        }
+        action.add(scope, name, version);
+    }
+
+    /**
+     * Adds a library, unless it is already recorded
+     *
+     * @return whether the library was added
+     */
+    synchronized boolean add(@NonNull String scope, @NonNull String name, @NonNull String version) {
+        for (Library library : libraries) {
+            if (scope.equals(library.scope) && library.name.equals(name) && library.version.equals(version)) {
+                return false;
+            }
+        }
+        return libraries.add(new Library(scope, name, version));
+    }
+
+    /**
+     * @return the libraries retrieved by the build, in order of retrieval
+     */
+    @NonNull
+    public synchronized List<Library> getLibraries() {
+        return Collections.unmodifiableList(new ArrayList<>(libraries));
+    }
+}
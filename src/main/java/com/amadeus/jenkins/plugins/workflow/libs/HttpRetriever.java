@@ -1,12 +1,15 @@
 package com.amadeus.jenkins.plugins.workflow.libs;
 
+import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
 import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.AbortException;
 import hudson.Extension;
 import hudson.FilePath;
+import hudson.Util;
 import hudson.model.Computer;
 import hudson.model.Item;
 import hudson.model.Run;
@@ -19,7 +22,9 @@ import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpEntity;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -29,12 +34,14 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.jenkinsci.Symbol;
 import org.jenkinsci.plugins.workflow.libs.LibraryRetriever;
 import org.jenkinsci.plugins.workflow.libs.LibraryRetrieverDescriptor;
@@ -42,27 +49,36 @@ import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.regex.PatternSyntaxException;
 
 import static com.cloudbees.plugins.credentials.CredentialsProvider.USE_ITEM;
 import static com.cloudbees.plugins.credentials.CredentialsProvider.findCredentialById;
@@ -104,8 +120,31 @@ public class HttpRetriever extends LibraryRetriever {
    */
   private final boolean preemptiveAuth;
 
+  /**
+   * Regular expression matching the versions that never change once published, such as releases.
+   * Once cached, the archive of such a version is reused without any HTTP request.
+   */
+  private String immutableVersions;
+
+  /**
+   * {@link #immutableVersions} compiled once, null if there is none or it is invalid
+   */
+  private transient Pattern immutableVersionsPattern;
+
+  /**
+   * Templates of the URLs of the mirrors of the archive, one per line, tried in order when the main URL fails or
+   * is slow to answer. They are resolved like the main URL template.
+   */
+  private String mirrorURLs;
+
   private static final Logger LOGGER = Logger.getLogger(HttpRetriever.class.getName());
 
+  /**
+   * Downloads and extractions in progress, by cache key, so that concurrent builds needing the same archive
+   * share a single download. Without the cache, each build downloads into its own directory.
+   */
+  private static final SingleFlight<String, CachedArchive> DOWNLOADS = new SingleFlight<>();
+
   /**
    * Constructor
    *
@@ -152,6 +191,77 @@ public class HttpRetriever extends LibraryRetriever {
     return credentialsId;
   }
 
+  /**
+   * Accessor for the regular expression matching the versions that never change once published
+   *
+   * @return the regular expression, or null if no version is considered immutable
+   */
+  public String getImmutableVersions() {
+    return immutableVersions;
+  }
+
+  /**
+   * Sets the regular expression matching the versions that never change once published,
+   * for instance {@code \d+\.\d+\.\d+} for semantic versioning releases
+   *
+   * @param immutableVersions regular expression matched against the whole version
+   */
+  @DataBoundSetter
+  public void setImmutableVersions(String immutableVersions) {
+    this.immutableVersions = Util.fixEmptyAndTrim(immutableVersions);
+    this.immutableVersionsPattern = compile(this.immutableVersions);
+  }
+
+  /**
+   * Accessor for the templates of the URLs of the mirrors of the archive
+   *
+   * @return the templates, one per line, or null if there is no mirror
+   */
+  public String getMirrorURLs() {
+    return mirrorURLs;
+  }
+
+  /**
+   * Sets the templates of the URLs of the mirrors of the archive, tried in order after the main URL
+   *
+   * @param mirrorURLs URL templates, one per line
+   */
+  @DataBoundSetter
+  public void setMirrorURLs(String mirrorURLs) {
+    this.mirrorURLs = Util.fixEmptyAndTrim(mirrorURLs);
+  }
+
+  /**
+   * Tells if a version never changes once published
+   *
+   * @param version the version of the library
+   * @return whether the version matches the immutable versions expression
+   */
+  boolean isImmutableVersion(String version) {
+    Pattern pattern = immutableVersionsPattern;
+    return pattern != null && pattern.matcher(version).matches();
+  }
+
+  private static Pattern compile(String immutableVersions) {
+    if (immutableVersions == null) {
+      return null;
+    }
+    try {
+      return Pattern.compile(immutableVersions);
+    } catch (PatternSyntaxException e) {
+      LOGGER.log(Level.WARNING, "Invalid immutable versions expression " + immutableVersions, e);
+      return null;
+    }
+  }
+
+  /**
+   * Compiles the immutable versions expression of the retrievers loaded from disk
+   */
+  private Object readResolve() {
+    immutableVersionsPattern = compile(immutableVersions);
+    return this;
+  }
+
 
   /**
    * Retrieves the shared library code. Prefer this version of the method.
@@ -197,52 +307,193 @@ public class HttpRetriever extends LibraryRetriever {
     if (httpUrl.isEmpty()) {
       throw new Exception("The URL of the shared library is empty.");
     }
-    httpUrl = convertURLVersion(httpUrl, name, version);
-    doRetrieve(httpUrl, name, version, target, listener, run);
+    doRetrieve(getSourceURLs(name, version), name, version, target, listener, run);
+    if (HttpRetrieverConfiguration.get().isQueuePrefetch()) {
+      String scope = QueuePrefetcher.scopeOf(run.getParent(), this);
+      // Not defined in a folder nor globally, for instance a dynamic library: cannot be looked up for the next build
+      if (scope != null) {
+        HttpLibrariesAction.record(run, scope, name, version);
+      }
+    }
+  }
+
+  /**
+   * Downloads a version of the library into the controller cache and extracts it there, outside of any build,
+   * so that the builds needing it later find it ready. Does nothing if caching is disabled.
+   *
+   * @param name     Name of the library
+   * @param version  Version of the library
+   * @param context  The folder defining the library, where its credentials are looked up, or null for a global library
+   * @param priority The priority of the requests among the ones to the same host
+   * @param listener Where to log the retrieval
+   * @throws Exception if the archive cannot be downloaded or extracted
+   */
+  void prefetch(@NonNull String name, @NonNull String version, @CheckForNull Item context,
+                @NonNull DownloadScheduler.Priority priority, @NonNull TaskListener listener) throws Exception {
+    prefetchToCache(name, version, () -> findCredentials(credentialsId, context), priority, listener);
+  }
+
+  /**
+   * Downloads a version of the library into the controller cache and extracts it there, for the next build of the
+   * job of a previous build. The credentials are looked up as that build did, so that the next one finds the same
+   * cache entry. Does nothing if caching is disabled.
+   *
+   * @param name     Name of the library
+   * @param version  Version of the library
+   * @param previous A previous build of the job
+   * @param priority The priority of the requests among the ones to the same host
+   * @param listener Where to log the retrieval
+   * @throws Exception if the archive cannot be downloaded or extracted
+   */
+  void prefetch(@NonNull String name, @NonNull String version, @NonNull Run<?, ?> previous,
+                @NonNull DownloadScheduler.Priority priority, @NonNull TaskListener listener) throws Exception {
+    prefetchToCache(name, version, () -> initPasswordCredentials(previous), priority, listener);
+  }
+
+  private void prefetchToCache(String name, String version, Supplier<UsernamePasswordCredentials> credentials,
+                               DownloadScheduler.Priority priority, TaskListener listener)
+          throws IOException, InterruptedException {
+    LibraryArchiveCache cache = getArchiveCache();
+    String httpUrl = getHttpURL();
+    if (cache == null || httpUrl == null || httpUrl.isEmpty()) {
+      return;
+    }
+    UsernamePasswordCredentials passwordCredentials = credentials.get();
+    List<String> sourceURLs = getSourceURLs(name, version);
+    String key = LibraryArchiveCache.keyOf(sourceURLs.get(0), passwordCredentials);
+    // Leased as by the builds, so that the entry is not evicted while it is stored
+    try (LibraryArchiveCache.Lease ignored = cache.lease(key)) {
+      fetchToCache(sourceURLs, version, passwordCredentials, cache, priority, listener);
+    }
   }
 
-  private void doRetrieve(String sourceURL, String name, String version, FilePath target,
+  /**
+   * @return the URLs of the archive of a version, the main one first and then the ones of the mirrors
+   */
+  private List<String> getSourceURLs(String name, String version) {
+    List<String> sourceURLs = new ArrayList<>();
+    sourceURLs.add(convertURLVersion(getHttpURL(), name, version));
+    if (mirrorURLs != null) {
+      for (String mirrorURL : mirrorURLs.split("\\R")) {
+        if (!mirrorURL.isBlank()) {
+          sourceURLs.add(convertURLVersion(mirrorURL.trim(), name, version));
+        }
+      }
+    }
+    return sourceURLs;
+  }
+
+  /**
+   * @param sourceURLs URLs of the archive, the main one first and then the ones of the mirrors
+   */
+  private void doRetrieve(List<String> sourceURLs, String name, String version, FilePath target,
                           @NonNull TaskListener listener, Run<?, ?> run)
           throws InterruptedException, IOException, URISyntaxException {
 
+    // The archive is known by its main URL, whatever the mirror it is downloaded from
+    String sourceURL = sourceURLs.get(0);
+
     UsernamePasswordCredentials passwordCredentials = initPasswordCredentials(run);
 
+    LibraryArchiveCache cache = getArchiveCache();
+    if (cache != null) {
+      String key = LibraryArchiveCache.keyOf(sourceURL, passwordCredentials);
+      try (LibraryArchiveCache.Lease lease = cache.lease(key)) {
+        CachedArchive archive = fetchToCache(sourceURLs, version, passwordCredentials, cache,
+                DownloadScheduler.Priority.BUILD, listener);
+        Path tree = lease.tree(archive, getExtractionParallelism());
+        placeLibrary(new FilePath(tree.toFile()), true, sourceURL, name, version, target, listener);
+      }
+      return;
+    }
+
     String zipFileName = FilenameUtils.getName(new URL(sourceURL).getPath());
     FilePath dir = getDownloadFolder(name, run);
     Computer computer = getSlave();
 
     try (WorkspaceList.Lease lease = getWorkspace(dir, computer)) {
 
-      FilePath filePath = download(sourceURL, passwordCredentials, zipFileName, lease);
-      unzip(lease, filePath);
+      // The permissions of the files of a zip archive are in its central directory, at its end: without a cached
+      // copy to read them from once extracted, zip archives are written to disk first
+      FilePath filePath = download(sourceURLs, passwordCredentials, DownloadScheduler.Priority.BUILD, listener,
+              (inputStream, format) -> {
+                if (isStreamingExtraction() && format.isTar()) {
+                  ArchiveExtractor.extract(inputStream, format, Paths.get(lease.path.getRemote()));
+                  return null;
+                }
+                return writeResponseToFile(zipFileName, lease, inputStream);
+              });
+      if (filePath == null) {
+        flattenWrappingDirectory(lease.path);
+      } else {
+        unzip(lease, filePath);
+        // Delete the archive
+        filePath.delete();
+      }
+      placeLibrary(lease.path, false, sourceURL, name, version, target, listener);
+    }
+  }
+
+  /**
+   * Downloads the archive into the cache and extracts it, or waits for the same retrieval already in progress,
+   * raising its priority if needed (see {@link DownloadCallers})
+   */
+  private CachedArchive fetchToCache(List<String> sourceURLs, String version,
+                                     UsernamePasswordCredentials passwordCredentials, LibraryArchiveCache cache,
+                                     DownloadScheduler.Priority priority, TaskListener listener)
+          throws IOException, InterruptedException {
+    String sourceURL = sourceURLs.get(0);
+    boolean immutableVersion = isImmutableVersion(version);
+    String key = LibraryArchiveCache.keyOf(sourceURL, passwordCredentials);
+    try (DownloadCallers.Caller caller = DownloadCallers.join(key, priority, listener)) {
+      DownloadCallers callers = caller.getCallers();
+      if (caller.hasRaisedPriority()) {
+        getAdmissionControl().onPriorityRaised();
+      }
+      return DOWNLOADS.execute(key, () -> {
+        CachedArchive downloaded = downloadToCache(sourceURLs, passwordCredentials, immutableVersion, cache,
+                callers::getPriority, callers.getListener());
+        // Extracted once for all the builds waiting for it
+        cache.tree(downloaded, getExtractionParallelism());
+        return downloaded;
+      }, () -> listener.getLogger().println("Waiting for the retrieval of " + sourceURL + " already in progress"));
+    }
+  }
 
-      // Read version in version.txt if existing
-      String versionMessage = "";
-      String resolvedVersion = readVersion(lease.path);
+  /**
+   * Places the extracted library into the directory of the build
+   *
+   * @param library where the library was extracted
+   * @param shared  whether the extracted library is shared with other builds, so must be left as is
+   */
+  private void placeLibrary(FilePath library, boolean shared, String sourceURL, String name, String version,
+                            FilePath target, TaskListener listener) throws IOException, InterruptedException {
+    // Read version in version.txt if existing
+    String versionMessage = "";
+    String resolvedVersion = readVersion(library);
 
-      if (resolvedVersion != null) {
-        resolvedVersion = resolvedVersion.trim();
+    if (resolvedVersion != null) {
+      resolvedVersion = resolvedVersion.trim();
 
-        // Just in case the version.txt would contain some new lines...
-        if (!resolvedVersion.equals(version)) {
-          versionMessage = "Resolving version " + resolvedVersion + " of library " + name + "...\n";
-        }
+      // Just in case the version.txt would contain some new lines...
+      if (!resolvedVersion.equals(version)) {
+        versionMessage = "Resolving version " + resolvedVersion + " of library " + name + "...\n";
       }
-      versionMessage += "From HTTP URL: " + sourceURL;
-      listener.getLogger().println(versionMessage);
-
-      // check to see if single directory is present, possibly encompassing the whole shared library that is configured
-      if (lease.path.list().size() == 1 && lease.path.list().get(0).isDirectory()) {
-          // perform a final check to make sure the upper level directory isn't just a single dir of a shared library,
-          // (e.g.`src`, `vars`, or `resources`) before moving the child contents into the proper FS location
-          String sharedLibUpperDir = lease.path.list().get(0).getName();
-          if (!sharedLibUpperDir.equals("src") && !sharedLibUpperDir.equals("vars") && !sharedLibUpperDir.equals("resources")) {
-              // move child contents of the encompassing directory
-              lease.path.list().get(0).moveAllChildrenTo(lease.path);
-          }
-      }
-      // Copying it in build folder
-      lease.path.copyRecursiveTo(target);
+    }
+    versionMessage += "From HTTP URL: " + sourceURL;
+    listener.getLogger().println(versionMessage);
+
+    // Placing it in build folder
+    MaterializationStrategy strategy = getMaterializationStrategy();
+    materialize(library, target, shared ? strategy.forSharedSource() : strategy);
+  }
+
+  private static void materialize(FilePath source, FilePath target, MaterializationStrategy strategy)
+          throws IOException, InterruptedException {
+    if (source.isRemote() || target.isRemote()) {
+      source.copyRecursiveTo(target);
+    } else {
+      strategy.materialize(Paths.get(source.getRemote()), Paths.get(target.getRemote()));
     }
   }
 
@@ -270,6 +521,30 @@ public class HttpRetriever extends LibraryRetriever {
     return null;
   }
 
+  /**
+   * Finds the credentials of a library outside of any build the way the builds using it do, with
+   * {@link #initPasswordCredentials(Run)}, so that the cache keys match: the first credentials of that id visible
+   * from the folder defining the library, whatever their type. A global library is used by items, which do not see
+   * the credentials of the system scope.
+   *
+   * @param context the folder defining the library, or null for a global library
+   */
+  UsernamePasswordCredentials findCredentials(String credentialsId, @CheckForNull Item context) {
+    if (credentialsId == null) {
+      return null;
+    }
+    List<StandardUsernameCredentials> visible = context == null
+            ? lookupCredentials(StandardUsernameCredentials.class, getJenkins(), ACL.SYSTEM, Collections.emptyList())
+            : lookupCredentials(StandardUsernameCredentials.class, context, ACL.SYSTEM, Collections.emptyList());
+    for (StandardUsernameCredentials credentials : visible) {
+      if (credentialsId.equals(credentials.getId())
+              && (context != null || credentials.getScope() != CredentialsScope.SYSTEM)) {
+        return credentials instanceof UsernamePasswordCredentials ? (UsernamePasswordCredentials) credentials : null;
+      }
+    }
+    return null;
+  }
+
   UsernamePasswordCredentials findCredentials(String credentialsId) {
     List<StandardUsernameCredentials> standardUsernameCredentials = lookupCredentials(
             StandardUsernameCredentials.class, getJenkins(), ACL.SYSTEM, Collections.emptyList());
@@ -284,50 +559,322 @@ public class HttpRetriever extends LibraryRetriever {
     return null;
   }
 
-  private void unzip(WorkspaceList.Lease lease, FilePath filePath) throws IOException, InterruptedException {
-    try (ZipFile zipFile = new ZipFile(filePath.getRemote())) {
-      Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
-      while (zipEntries.hasMoreElements()) {
-          String fileName = zipEntries.nextElement().getName();
-          if(fileName != null && fileName.contains("..")){
-            throw new IOException("Unsupported ZIP format that contains relative paths to parent that could cause a security breach");
-          }
+  /**
+   * Extracts the archive, stripping the directory encompassing the whole shared library if any
+   */
+  private void unzip(WorkspaceList.Lease lease, FilePath filePath) throws IOException {
+    ArchiveExtractor.extract(Paths.get(filePath.getRemote()), Paths.get(lease.path.getRemote()),
+            getExtractionParallelism());
+  }
+
+  /**
+   * Moves up the content of a single directory encompassing the whole shared library, for the archives that
+   * could not be flattened while being extracted
+   */
+  private static void flattenWrappingDirectory(FilePath path) throws IOException, InterruptedException {
+    List<FilePath> children = path.list();
+    // check to see if single directory is present, possibly encompassing the whole shared library that is configured
+    if (children.size() == 1 && children.get(0).isDirectory()) {
+      // perform a final check to make sure the upper level directory isn't just a single dir of a shared library,
+      // (e.g.`src`, `vars`, or `resources`) before moving the child contents into the proper FS location
+      String sharedLibUpperDir = children.get(0).getName();
+      if (!sharedLibUpperDir.equals("src") && !sharedLibUpperDir.equals("vars") && !sharedLibUpperDir.equals("resources")) {
+        // move child contents of the encompassing directory
+        children.get(0).moveAllChildrenTo(path);
+      }
+    }
+  }
+
+  /**
+   * Handles the content of a successful response
+   *
+   * @param <T> type of the result
+   */
+  @FunctionalInterface
+  private interface ContentHandler<T> {
+    T handle(InputStream content, ArchiveFormat format) throws IOException;
+  }
+
+  private <T> T download(List<String> sourceURLs, UsernamePasswordCredentials passwordCredentials,
+                         DownloadScheduler.Priority priority, TaskListener listener, ContentHandler<T> handler)
+          throws IOException, InterruptedException, URISyntaxException {
+    try (Exchange exchange = get(sourceURLs, passwordCredentials, () -> priority, listener, request -> { },
+            statusCode -> statusCode == HttpStatus.SC_OK)) {
+      try (InputStream inputStream = getContent(exchange)) {
+        return handler.handle(inputStream, getArchiveFormat(exchange.response, exchange.url));
+      }
+    }
+  }
+
+  /**
+   * A GET request, the response of the server, and the permission to download from it
+   */
+  private static final class Exchange implements Closeable {
+    private final URL url;
+    private final HttpGet get;
+    private final HttpClientContext context;
+    private final CloseableHttpResponse response;
+    private final AdmissionControl.Permit permit;
+
+    Exchange(URL url, HttpGet get, HttpClientContext context, CloseableHttpResponse response,
+             AdmissionControl.Permit permit) {
+      this.url = url;
+      this.get = get;
+      this.context = context;
+      this.response = response;
+      this.permit = permit;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        response.close();
+      } finally {
+        permit.close();
       }
     }
-    filePath.unzip(lease.path);
-    // Delete the archive
-    filePath.delete();
-  }
-
-  private FilePath download(String sourceURL, UsernamePasswordCredentials passwordCredentials,
-                            String zipFileName, WorkspaceList.Lease lease)
-          throws IOException, URISyntaxException {
-    URL url = new URL(sourceURL);
-    HttpGet get = new HttpGet(url.toURI());
-    try (CloseableHttpClient client = createCloseableHttpClient()) {
-      HttpClientContext context = getHttpClientContext(passwordCredentials, url);
-      try (CloseableHttpResponse response = client.execute(get, context)) {
-        int statusCode = response.getStatusLine().getStatusCode();
-        if (statusCode != HttpStatus.SC_OK) {
-          throw new IOException("Failed to download " + sourceURL + ". Returned code: " + statusCode);
+  }
+
+  /**
+   * Sends a GET request for the archive to its main URL, or to its mirrors when the main one fails or is slow
+   * to answer
+   *
+   * @param priority   the current priority of the request among the ones to the same host
+   * @param conditions adds the headers of a conditional request
+   * @param accepted   tells the status codes of a proper answer, the others are failures
+   */
+  private Exchange get(List<String> sourceURLs, UsernamePasswordCredentials passwordCredentials,
+                       Supplier<DownloadScheduler.Priority> priority, TaskListener listener,
+                       Consumer<HttpGet> conditions,
+                       IntPredicate accepted)
+          throws IOException, InterruptedException, URISyntaxException {
+    // A single watchdog for the mirrors, so that the deadline covers the whole download
+    DownloadWatchdog watchdog = newDownloadWatchdog();
+    List<HedgedRequests.Attempt<Exchange>> attempts = new ArrayList<>();
+    for (String sourceURL : sourceURLs) {
+      URL url = new URL(sourceURL);
+      HttpGet get = new HttpGet(url.toURI());
+      conditions.accept(get);
+      HttpClientContext context = getHttpClientContext(passwordCredentials, url, watchdog);
+      attempts.add(new HedgedRequests.Attempt<Exchange>() {
+        @Override
+        public Exchange send() throws IOException {
+          AdmissionControl.Permit permit = admit(get, priority, watchdog, listener);
+          try {
+            CloseableHttpResponse response = execute(get, context, permit);
+            if (!accepted.test(response.getStatusLine().getStatusCode())) {
+              try (response) {
+                throw downloadFailure(sourceURL, response);
+              }
+            }
+            return new Exchange(url, get, context, response, permit);
+          } catch (IOException | RuntimeException e) {
+            permit.close();
+            throw e;
+          }
+        }
+
+        @Override
+        public void abort() {
+          get.abort();
         }
-        return writeResponseToFile(zipFileName, lease, response);
+      });
+    }
+    return HedgedRequests.first(attempts, getHedgeDelayMillis());
+  }
+
+  /**
+   * Downloads the archive into the controller cache. If a previous download is cached, it is reused as is
+   * when the version is immutable or the server said it is still fresh. Otherwise the request is made
+   * conditional and the cached archive is reused when the server answers it was not modified.
+   * <p>
+   * With streaming extraction, a downloaded archive is extracted into its tree while it is written to the cache.
+   * <p>
+   * When the server cannot be reached or fails, including while the circuit of its host is open, the cached archive
+   * is used if it was validated recently enough (stale-if-error).
+   * <p>
+   * Unless the download itself runs in the background, a cached archive validated recently enough is used at once
+   * while it is revalidated in the background (stale-while-revalidate).
+   */
+  private CachedArchive downloadToCache(List<String> sourceURLs, UsernamePasswordCredentials passwordCredentials,
+                                        boolean immutableVersion, LibraryArchiveCache cache,
+                                        Supplier<DownloadScheduler.Priority> priority, TaskListener listener)
+          throws IOException, InterruptedException, URISyntaxException {
+    String sourceURL = sourceURLs.get(0);
+    String key = LibraryArchiveCache.keyOf(sourceURL, passwordCredentials);
+    CachedArchive cached = cache.lookup(key);
+    if (cached != null && (immutableVersion || cached.isFresh(System.currentTimeMillis()))) {
+      listener.getLogger().println("Using the cached copy of the library archive");
+      return cached;
+    }
+    long age = cached == null ? -1 : System.currentTimeMillis() - cached.getValidatedAt();
+    if (cached != null && priority.get() != DownloadScheduler.Priority.BACKGROUND
+            && age < TimeUnit.SECONDS.toMillis(getStaleWhileRevalidateSeconds())) {
+      listener.getLogger().println("Using the cached copy of the library archive validated "
+              + Util.getTimeSpanString(Math.max(0, age)) + " ago, revalidating it in the background");
+      HttpRetrieverMetrics.increment(HttpRetrieverMetrics.Metric.STALE_WHILE_REVALIDATE);
+      revalidateInBackground(sourceURLs, passwordCredentials, key, cached, cache);
+      return cached;
+    }
+    try {
+      return requestToCache(sourceURLs, passwordCredentials, key, cached, cache, priority, listener);
+    } catch (IOException e) {
+      long staleness = cached == null ? -1 : System.currentTimeMillis() - cached.getValidatedAt();
+      long maxStaleness = TimeUnit.SECONDS.toMillis(getStaleIfErrorSeconds());
+      if (cached == null || staleness > maxStaleness || Thread.currentThread().isInterrupted()) {
+        throw e;
       }
+      LOGGER.log(Level.FINE, "Using the cached copy of " + sourceURL + " after a failed retrieval", e);
+      listener.getLogger().println("WARNING: Failed to retrieve " + sourceURL + " (" + e.getMessage()
+              + "), using the cached copy of the library archive validated "
+              + Util.getTimeSpanString(Math.max(0, staleness)) + " ago");
+      HttpRetrieverMetrics.increment(HttpRetrieverMetrics.Metric.STALE_ARCHIVES_USED);
+      return cached;
     }
   }
 
-  private FilePath writeResponseToFile(String zipFileName, WorkspaceList.Lease lease, HttpResponse response) throws IOException {
-    HttpEntity entity = response.getEntity();
-    try (InputStream inputStream = entity.getContent()) {
-      String wholeFilenameWithTargetPath = lease.path.child(zipFileName).getRemote();
-      File file = new File(wholeFilenameWithTargetPath);
-      if (file.getParentFile().exists() || file.getParentFile().mkdirs()) {
-        Files.copy(inputStream, Paths.get(wholeFilenameWithTargetPath),
-                StandardCopyOption.REPLACE_EXISTING);
-        return new FilePath(file);
-      } else {
-        throw new IOException("Could not create the folders for " + wholeFilenameWithTargetPath);
+  /**
+   * Revalidates a cached archive with a background task, and extracts the new archive if it changed so that the next
+   * builds find it ready. The revalidation is a retrieval of the archive like the others: the builds and prefetches
+   * needing it meanwhile wait for it instead of downloading it again.
+   */
+  private void revalidateInBackground(List<String> sourceURLs, UsernamePasswordCredentials passwordCredentials,
+                                      String key, CachedArchive cached, LibraryArchiveCache cache) {
+    getDownloadScheduler().submit(DownloadScheduler.Priority.BACKGROUND, () -> {
+      try (DownloadCallers.Caller caller = DownloadCallers.join(key, DownloadScheduler.Priority.BACKGROUND,
+              TaskListener.NULL)) {
+        DownloadCallers callers = caller.getCallers();
+        AtomicBoolean led = new AtomicBoolean();
+        CachedArchive result;
+        do {
+          // Joining a retrieval that used the cached copy as is, such as the one that asked for this revalidation,
+          // does not revalidate it
+          result = DOWNLOADS.execute(key, () -> {
+            led.set(true);
+            return revalidate(sourceURLs, passwordCredentials, key, cached, cache, callers);
+          }, () -> { });
+        } while (!led.get() && result.getValidatedAt() <= cached.getValidatedAt());
+      } catch (IOException | InterruptedException | RuntimeException e) {
+        // The next build past the stale-while-revalidate delay revalidates the archive itself
+        LOGGER.log(Level.FINE, "Failed to revalidate the cached copy of " + sourceURLs.get(0), e);
       }
+      return null;
+    });
+  }
+
+  private CachedArchive revalidate(List<String> sourceURLs, UsernamePasswordCredentials passwordCredentials,
+                                   String key, CachedArchive cached, LibraryArchiveCache cache,
+                                   DownloadCallers callers)
+          throws IOException, InterruptedException, URISyntaxException {
+    CachedArchive current = cache.lookup(key);
+    if (current != null && current.getValidatedAt() > cached.getValidatedAt()) {
+      // Already revalidated, by a build or by another revalidation
+      return current;
+    }
+    CachedArchive revalidated = requestToCache(sourceURLs, passwordCredentials, key, current, cache,
+            callers::getPriority, callers.getListener());
+    cache.tree(revalidated, getExtractionParallelism());
+    return revalidated;
+  }
+
+
+  /**
+   * Downloads the archive into the cache, or revalidates the cached one
+   */
+  private CachedArchive requestToCache(List<String> sourceURLs, UsernamePasswordCredentials passwordCredentials,
+                                       String key, CachedArchive cached, LibraryArchiveCache cache,
+                                       Supplier<DownloadScheduler.Priority> priority, TaskListener listener)
+          throws IOException, InterruptedException, URISyntaxException {
+    String sourceURL = sourceURLs.get(0);
+    try (Exchange exchange = get(sourceURLs, passwordCredentials, priority, listener, request -> {
+      if (cached != null) {
+        if (cached.getEtag() != null) {
+          request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getEtag());
+        }
+        if (cached.getLastModified() != null) {
+          request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+        }
+      }
+    }, statusCode -> statusCode == HttpStatus.SC_OK || statusCode == HttpStatus.SC_NOT_MODIFIED && cached != null)) {
+      CloseableHttpResponse response = exchange.response;
+      if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+        listener.getLogger().println("Library archive not modified since last retrieval, using the cached copy");
+        return cache.revalidated(cached, getCacheControl(response));
+      }
+      String etag = getHeaderValue(response, HttpHeaders.ETAG);
+      String lastModified = getHeaderValue(response, HttpHeaders.LAST_MODIFIED);
+      CacheControl cacheControl = getCacheControl(response);
+      try (InputStream inputStream = getContent(exchange)) {
+        if (!isStreamingExtraction()) {
+          return cache.store(key, sourceURL, inputStream, etag, lastModified, cacheControl);
+        }
+        Path staging = cache.newStagingTree();
+        try {
+          ArchiveFormat format = getArchiveFormat(response, exchange.url);
+          CachedArchive stored = cache.store(key, sourceURL,
+                  out -> extractWhileWriting(inputStream, format, out, staging), etag, lastModified, cacheControl);
+          if (!format.isTar()) {
+            ArchiveExtractor.setUnixModes(stored.getArchive(), staging);
+          }
+          flattenWrappingDirectory(new FilePath(staging.toFile()));
+          cache.publishTree(staging, stored.getDigest());
+          return stored;
+        } catch (IOException | InterruptedException e) {
+          LibraryArchiveCache.deleteRecursively(staging);
+          throw e;
+        }
+      }
+    }
+  }
+
+  private static void extractWhileWriting(InputStream inputStream, ArchiveFormat format, OutputStream out,
+                                         Path extractTo) throws IOException {
+    TeeInputStream tee = new TeeInputStream(inputStream, out);
+    ArchiveExtractor.extract(tee, format, extractTo);
+    // The extraction stops after the last entry: the rest of the archive, such as the central directory of a zip,
+    // still has to reach the cached copy
+    IOUtils.copy(tee, OutputStream.nullOutputStream());
+  }
+
+  /**
+   * Reads the content of a successful response, resuming it if the connection breaks before its end
+   */
+  private InputStream getContent(Exchange exchange) throws IOException {
+    return new ResumableInputStream(getHttpClient(), exchange.context, exchange.get.getURI(), exchange.response);
+  }
+
+  private static IOException downloadFailure(String sourceURL, HttpResponse response) {
+    // Drain the error body so that the pooled connection can be reused
+    EntityUtils.consumeQuietly(response.getEntity());
+    return new IOException("Failed to download " + sourceURL + ". Returned code: "
+            + response.getStatusLine().getStatusCode());
+  }
+
+  /**
+   * Finds the format of a downloaded archive, from its content type or else from the file name of its URL
+   */
+  private static ArchiveFormat getArchiveFormat(HttpResponse response, URL url) {
+    return ArchiveFormat.of(getHeaderValue(response, HttpHeaders.CONTENT_TYPE), FilenameUtils.getName(url.getPath()));
+  }
+
+  private static CacheControl getCacheControl(HttpResponse response) {
+    return CacheControl.parse(getHeaderValue(response, HttpHeaders.CACHE_CONTROL));
+  }
+
+  private static String getHeaderValue(HttpResponse response, String name) {
+    Header header = response.getFirstHeader(name);
+    return header == null ? null : header.getValue();
+  }
+
+  private FilePath writeResponseToFile(String zipFileName, WorkspaceList.Lease lease, InputStream inputStream) throws IOException {
+    String wholeFilenameWithTargetPath = lease.path.child(zipFileName).getRemote();
+    File file = new File(wholeFilenameWithTargetPath);
+    if (file.getParentFile().exists() || file.getParentFile().mkdirs()) {
+      Files.copy(inputStream, Paths.get(wholeFilenameWithTargetPath),
+              StandardCopyOption.REPLACE_EXISTING);
+      return new FilePath(file);
+    } else {
+      throw new IOException("Could not create the folders for " + wholeFilenameWithTargetPath);
     }
   }
 
@@ -443,21 +990,182 @@ public class HttpRetriever extends LibraryRetriever {
   private int checkURL(URL url) throws IOException, URISyntaxException {
     UsernamePasswordCredentials passwordCredentials = initPasswordCredentials();
     HttpHead head = new HttpHead(url.toURI());
-    try (CloseableHttpClient client = createCloseableHttpClient()) {
-      HttpClientContext context = getHttpClientContext(passwordCredentials, url);
-      try (CloseableHttpResponse response = client.execute(head, context)) {
-        return response.getStatusLine().getStatusCode();
+    DownloadWatchdog watchdog = newDownloadWatchdog();
+    HttpClientContext context = getHttpClientContext(passwordCredentials, url, watchdog);
+    try (AdmissionControl.Permit permit = admit(head, () -> DownloadScheduler.Priority.VALIDATION, watchdog,
+            null);
+         CloseableHttpResponse response = execute(head, context, permit)) {
+      return response.getStatusLine().getStatusCode();
+    }
+  }
+
+  /**
+   * Waits for the turn of a request among the ones to the same host, see {@link AdmissionControl}
+   *
+   * @param listener where to tell how long the request waited, if anywhere
+   */
+  private AdmissionControl.Permit admit(HttpUriRequest request, Supplier<DownloadScheduler.Priority> priority,
+                                        DownloadWatchdog watchdog, TaskListener listener) throws IOException {
+    String host = URIUtils.extractHost(request.getURI()).toURI();
+    AdmissionControl.Permit permit;
+    try {
+      permit = getAdmissionControl().acquire(host, priority, watchdog.remainingMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to download from " + host);
+    }
+    if (permit == null) {
+      throw watchdog.deadlineExceeded();
+    }
+    if (permit.getWaitedMillis() > 0 && listener != null) {
+      listener.getLogger().println("Waited " + Util.getTimeSpanString(permit.getWaitedMillis())
+              + " for one of the " + permit.getLimit() + " downloads from " + host + " allowed at the same time");
+    }
+    return permit;
+  }
+
+  /**
+   * Sends a request unless the circuit of its host is open, and reports the outcome to the circuit breaker:
+   * server errors and connection failures count as failures, once the retries are exhausted. The outcome and the
+   * response time are also reported to the admission control. The requests aborted because another mirror answered
+   * first tell nothing about their host, so they are reported to neither.
+   */
+  private CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context,
+                                        AdmissionControl.Permit permit) throws IOException {
+    CircuitBreaker circuitBreaker = getCircuitBreaker();
+    String host = URIUtils.extractHost(request.getURI()).toURI();
+    circuitBreaker.acquire(host);
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      CloseableHttpResponse response = getHttpClient().execute(request, context);
+      int statusCode = response.getStatusLine().getStatusCode();
+      success = statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR && statusCode != HttpStatus.SC_TOO_MANY_REQUESTS;
+      return response;
+    } finally {
+      if (!success && request.isAborted()) {
+        circuitBreaker.onAbandoned(host);
+      } else {
+        permit.report(success, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (success) {
+          circuitBreaker.onSuccess(host);
+        } else {
+          circuitBreaker.onFailure(host);
+        }
       }
     }
   }
 
-  private static CloseableHttpClient createCloseableHttpClient() {
-    return HttpClients.custom().setServiceUnavailableRetryStrategy(new CustomServiceUnavailableRetryStrategy())
-            .setRetryHandler(new CustomHttpRequestRetryHandler()).build();
+  /**
+   * The client is shared by all the retrievers so that connections are pooled: it must never be closed here.
+   */
+  CloseableHttpClient getHttpClient() {
+    return SharedHttpClient.get();
+  }
+
+  /**
+   * Accessor for the controller cache of downloaded archives
+   *
+   * @return the cache, or null if caching is disabled
+   */
+  LibraryArchiveCache getArchiveCache() {
+    return HttpRetrieverConfiguration.get().isCacheEnabled() ? LibraryArchiveCache.get() : null;
+  }
+
+  /**
+   * Accessor for how long after its last validation a cached archive can be used when the server fails
+   *
+   * @return the maximum staleness, in seconds
+   */
+  long getStaleIfErrorSeconds() {
+    return HttpRetrieverConfiguration.get().getStaleIfErrorSeconds();
+  }
+
+  /**
+   * Accessor for how long after its last validation a cached archive is used while it is revalidated in the background
+   *
+   * @return the maximum staleness, in seconds, 0 to always revalidate the archive before using it
+   */
+  long getStaleWhileRevalidateSeconds() {
+    return HttpRetrieverConfiguration.get().getStaleWhileRevalidateSeconds();
+  }
+
+  /**
+   * Accessor for the scheduler of the background downloads
+   *
+   * @return the scheduler shared by all the retrievers
+   */
+  DownloadScheduler getDownloadScheduler() {
+    return DownloadScheduler.get();
+  }
+
+  /**
+   * Accessor for how long to wait for a mirror before also requesting the next one
+   *
+   * @return the hedging delay, 0 to only request the next mirror once the previous one failed
+   */
+  long getHedgeDelayMillis() {
+    return HttpRetrieverConfiguration.get().getHedgeDelayMillis();
+  }
+
+  /**
+   * Starts the watchdog of a download, which bounds its duration
+   *
+   * @return the watchdog, with the limits of the global configuration
+   */
+  DownloadWatchdog newDownloadWatchdog() {
+    return DownloadWatchdog.of(HttpRetrieverConfiguration.get());
+  }
+
+  /**
+   * Accessor for the admission control of the downloads
+   *
+   * @return the admission control shared by all the retrievers
+   */
+  AdmissionControl getAdmissionControl() {
+    return AdmissionControl.get();
+  }
+
+  /**
+   * Accessor for the circuit breaker of the library hosts
+   *
+   * @return the circuit breaker shared by all the retrievers
+   */
+  CircuitBreaker getCircuitBreaker() {
+    return CircuitBreaker.get();
+  }
+
+  /**
+   * Accessor for whether archives are extracted while they are downloaded
+   *
+   * @return whether streaming extraction is enabled
+   */
+  boolean isStreamingExtraction() {
+    return HttpRetrieverConfiguration.get().isStreamingExtraction();
   }
 
-  private HttpClientContext getHttpClientContext(UsernamePasswordCredentials passwordCredentials, URL url) {
+  /**
+   * Accessor for how the extracted library is placed into the directory of the build
+   *
+   * @return the materialization strategy
+   */
+  MaterializationStrategy getMaterializationStrategy() {
+    return HttpRetrieverConfiguration.get().getMaterializationStrategy();
+  }
+
+  /**
+   * Accessor for how many files of a zip archive are extracted at the same time
+   *
+   * @return the extraction parallelism, 1 for a sequential extraction
+   */
+  int getExtractionParallelism() {
+    return HttpRetrieverConfiguration.get().getExtractionParallelism();
+  }
+
+  private HttpClientContext getHttpClientContext(UsernamePasswordCredentials passwordCredentials, URL url,
+                                                 DownloadWatchdog watchdog) throws IOException {
     HttpClientContext context = HttpClientContext.create();
+    watchdog.attachTo(context);
     // Authenticate if credentials are given
     if (passwordCredentials != null) {
       CredentialsProvider credentialsProvider = getCredentialsProvider(passwordCredentials);
@@ -522,6 +1230,18 @@ public class HttpRetriever extends LibraryRetriever {
       return result;
     }
 
+    public FormValidation doCheckImmutableVersions(@QueryParameter String value) {
+      if (Util.fixEmptyAndTrim(value) == null) {
+        return FormValidation.ok();
+      }
+      try {
+        Pattern.compile(value.trim());
+        return FormValidation.ok();
+      } catch (PatternSyntaxException e) {
+        return FormValidation.error("Invalid regular expression: " + e.getDescription());
+      }
+    }
+
   }
 
 }
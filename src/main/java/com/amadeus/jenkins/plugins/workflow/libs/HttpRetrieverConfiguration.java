@@ -0,0 +1,594 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.util.FormValidation;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller-wide settings shared by every {@link HttpRetriever}, whatever the level (global, folder or pipeline)
+ * the library is declared at.
+ */
+@Extension
+@Symbol("httpLibraryRetriever")
+@Restricted(NoExternalUse.class)
+public class HttpRetrieverConfiguration extends GlobalConfiguration {
+
+    static final int DEFAULT_MAX_CONNECTIONS = 50;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    static final int DEFAULT_CONNECTION_IDLE_TIMEOUT_SECONDS = 60;
+    static final int DEFAULT_KEEP_ALIVE_SECONDS = 300;
+    static final long DEFAULT_CACHE_QUOTA_MEGABYTES = 2048;
+    static final int DEFAULT_EXTRACTION_PARALLELISM = 1;
+    static final int DEFAULT_MAX_RETRIES = 2;
+    static final long DEFAULT_RETRY_BASE_DELAY_MILLIS = 3000;
+    static final long DEFAULT_RETRY_MAX_DELAY_MILLIS = 30000;
+    static final int DEFAULT_RETRY_DEADLINE_SECONDS = 60;
+    static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+    static final int DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS = 30;
+    static final int DEFAULT_RETRY_BUDGET_PERCENT = 10;
+    static final long DEFAULT_STALE_IF_ERROR_SECONDS = TimeUnit.DAYS.toSeconds(1);
+    static final long DEFAULT_HEDGE_DELAY_MILLIS = 2000;
+    static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+    static final int DEFAULT_READ_TIMEOUT_SECONDS = 60;
+    static final long DEFAULT_MIN_DOWNLOAD_BYTES_PER_SECOND = 1024;
+    static final int DEFAULT_LOW_DOWNLOAD_RATE_SECONDS = 30;
+    static final int DEFAULT_DOWNLOAD_TIMEOUT_SECONDS = 600;
+    static final int DEFAULT_MAX_DOWNLOADS_PER_HOST = 10;
+    static final int DEFAULT_BACKGROUND_DOWNLOAD_THREADS = 2;
+
+    /**
+     * Maximum number of connections kept in the shared pool, all hosts included
+     */
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    /**
+     * Maximum number of connections kept in the shared pool for a single host
+     */
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    /**
+     * Pooled connections that stayed unused for longer than this are closed
+     */
+    private int connectionIdleTimeoutSeconds = DEFAULT_CONNECTION_IDLE_TIMEOUT_SECONDS;
+
+    /**
+     * How long a connection is kept alive when the server does not say otherwise through a Keep-Alive header
+     */
+    private int keepAliveSeconds = DEFAULT_KEEP_ALIVE_SECONDS;
+
+    /**
+     * Whether downloaded archives are kept on the controller and revalidated with conditional requests
+     */
+    private boolean cacheEnabled;
+
+    /**
+     * Size above which the least recently used entries are evicted from the cache, 0 for no limit
+     */
+    private long cacheQuotaMegabytes = DEFAULT_CACHE_QUOTA_MEGABYTES;
+
+    /**
+     * How long after its last validation a cached archive is used when the server fails, 0 to never use it then
+     */
+    private long staleIfErrorSeconds = DEFAULT_STALE_IF_ERROR_SECONDS;
+
+    /**
+     * How long after its last validation a cached archive is used at once while it is revalidated in the background,
+     * 0 to always revalidate it before using it
+     */
+    private long staleWhileRevalidateSeconds;
+
+    /**
+     * Whether the default versions of the libraries are downloaded into the cache when the controller starts
+     */
+    private boolean cacheWarmup;
+
+    /**
+     * Whether the libraries a job retrieved in its previous build are downloaded into the cache when its next build
+     * enters the queue
+     */
+    private boolean queuePrefetch;
+
+    /**
+     * Whether archives are extracted while they are downloaded rather than once the download is complete
+     */
+    private boolean streamingExtraction;
+
+    /**
+     * How the extracted libraries are placed into the directory of the builds
+     */
+    private MaterializationStrategy materializationStrategy = MaterializationStrategy.COPY;
+
+    /**
+     * Maximum number of files of zip archives extracted at the same time, all retrievals included
+     */
+    private int extractionParallelism = DEFAULT_EXTRACTION_PARALLELISM;
+
+    /**
+     * Maximum number of retries of a failed request
+     */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * Upper bound of the random delay before the first retry, doubled for each next retry
+     */
+    private long retryBaseDelayMillis = DEFAULT_RETRY_BASE_DELAY_MILLIS;
+
+    /**
+     * Upper bound of any delay before a retry, including the ones asked by the server with Retry-After
+     */
+    private long retryMaxDelayMillis = DEFAULT_RETRY_MAX_DELAY_MILLIS;
+
+    /**
+     * No retry is made past that time after the first failure of a request, 0 for no deadline
+     */
+    private int retryDeadlineSeconds = DEFAULT_RETRY_DEADLINE_SECONDS;
+
+    /**
+     * Share of the requests to a host that can be retried, in percent, 0 for no limit
+     */
+    private int retryBudgetPercent = DEFAULT_RETRY_BUDGET_PERCENT;
+
+    /**
+     * Number of consecutive failed requests to a host after which its requests are suspended, 0 to never suspend them
+     */
+    private int circuitBreakerFailureThreshold = DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+
+    /**
+     * How long the requests to a failing host are suspended before a single one is sent to check it is back
+     */
+    private int circuitBreakerOpenSeconds = DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS;
+
+    /**
+     * How long to wait for the answer of a mirror before also sending the request to the next one, 0 to only send it
+     * once the previous mirror failed
+     */
+    private long hedgeDelayMillis = DEFAULT_HEDGE_DELAY_MILLIS;
+
+    /**
+     * Maximum duration of the connection to a host, and of the wait for a connection of the shared pool
+     */
+    private int connectTimeoutSeconds = DEFAULT_CONNECT_TIMEOUT_SECONDS;
+
+    /**
+     * Maximum duration without receiving anything from a host, while waiting for the response or reading it
+     */
+    private int readTimeoutSeconds = DEFAULT_READ_TIMEOUT_SECONDS;
+
+    /**
+     * Minimum transfer rate of an archive, below which the transfer is resumed from a new connection, 0 for no minimum
+     */
+    private long minDownloadBytesPerSecond = DEFAULT_MIN_DOWNLOAD_BYTES_PER_SECOND;
+
+    /**
+     * Duration over which the transfer rate must stay below the minimum for the transfer to be resumed
+     */
+    private int lowDownloadRateSeconds = DEFAULT_LOW_DOWNLOAD_RATE_SECONDS;
+
+    /**
+     * Maximum duration of the download of an archive, retries and resumes included, 0 for no limit
+     */
+    private int downloadTimeoutSeconds = DEFAULT_DOWNLOAD_TIMEOUT_SECONDS;
+
+    /**
+     * Maximum number of downloads running at the same time against a host, the others wait for their turn,
+     * 0 for no limit
+     */
+    private int maxDownloadsPerHost = DEFAULT_MAX_DOWNLOADS_PER_HOST;
+
+    /**
+     * Whether the number of downloads running against a host is adapted, up to the maximum, to its response times
+     * and failures
+     */
+    private boolean adaptiveDownloadLimit;
+
+    /**
+     * Maximum number of background tasks, such as prefetching archives into the cache, running at the same time
+     */
+    private int backgroundDownloadThreads = DEFAULT_BACKGROUND_DOWNLOAD_THREADS;
+
+    public HttpRetrieverConfiguration() {
+        // Outside a running controller (unit tests) there is nothing to load: defaults apply
+        if (Jenkins.getInstanceOrNull() != null) {
+            load();
+        }
+    }
+
+    /**
+     * Accessor for the configuration in use
+     *
+     * @return the controller configuration, or the default values if no controller is running
+     */
+    @NonNull
+    public static HttpRetrieverConfiguration get() {
+        if (Jenkins.getInstanceOrNull() == null) {
+            return new HttpRetrieverConfiguration();
+        }
+        return ExtensionList.lookupSingleton(HttpRetrieverConfiguration.class);
+    }
+
+    /**
+     * Binds the whole form then saves once, the setters only setting their field
+     */
+    @Override
+    public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+        req.bindJSON(this, json);
+        save();
+        return true;
+    }
+
+    @Override
+    public synchronized void save() {
+        super.save();
+        SharedHttpClient.reconfigure(this);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    @DataBoundSetter
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    @DataBoundSetter
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+    }
+
+    public int getConnectionIdleTimeoutSeconds() {
+        return connectionIdleTimeoutSeconds;
+    }
+
+    @DataBoundSetter
+    public void setConnectionIdleTimeoutSeconds(int connectionIdleTimeoutSeconds) {
+        this.connectionIdleTimeoutSeconds = Math.max(0, connectionIdleTimeoutSeconds);
+    }
+
+    public int getKeepAliveSeconds() {
+        return keepAliveSeconds;
+    }
+
+    @DataBoundSetter
+    public void setKeepAliveSeconds(int keepAliveSeconds) {
+        this.keepAliveSeconds = Math.max(0, keepAliveSeconds);
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    @DataBoundSetter
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public long getCacheQuotaMegabytes() {
+        return cacheQuotaMegabytes;
+    }
+
+    @DataBoundSetter
+    public void setCacheQuotaMegabytes(long cacheQuotaMegabytes) {
+        this.cacheQuotaMegabytes = Math.max(0, cacheQuotaMegabytes);
+    }
+
+    public long getStaleIfErrorSeconds() {
+        return staleIfErrorSeconds;
+    }
+
+    @DataBoundSetter
+    public void setStaleIfErrorSeconds(long staleIfErrorSeconds) {
+        this.staleIfErrorSeconds = Math.max(0, staleIfErrorSeconds);
+    }
+
+    public long getStaleWhileRevalidateSeconds() {
+        return staleWhileRevalidateSeconds;
+    }
+
+    @DataBoundSetter
+    public void setStaleWhileRevalidateSeconds(long staleWhileRevalidateSeconds) {
+        this.staleWhileRevalidateSeconds = Math.max(0, staleWhileRevalidateSeconds);
+    }
+
+    public boolean isCacheWarmup() {
+        return cacheWarmup;
+    }
+
+    @DataBoundSetter
+    public void setCacheWarmup(boolean cacheWarmup) {
+        this.cacheWarmup = cacheWarmup;
+    }
+
+    public boolean isQueuePrefetch() {
+        return queuePrefetch;
+    }
+
+    @DataBoundSetter
+    public void setQueuePrefetch(boolean queuePrefetch) {
+        this.queuePrefetch = queuePrefetch;
+    }
+
+    public boolean isStreamingExtraction() {
+        return streamingExtraction;
+    }
+
+    @DataBoundSetter
+    public void setStreamingExtraction(boolean streamingExtraction) {
+        this.streamingExtraction = streamingExtraction;
+    }
+
+    @NonNull
+    public MaterializationStrategy getMaterializationStrategy() {
+        return materializationStrategy == null ? MaterializationStrategy.COPY : materializationStrategy;
+    }
+
+    @DataBoundSetter
+    public void setMaterializationStrategy(MaterializationStrategy materializationStrategy) {
+        this.materializationStrategy = materializationStrategy;
+    }
+
+    public int getExtractionParallelism() {
+        return extractionParallelism;
+    }
+
+    @DataBoundSetter
+    public void setExtractionParallelism(int extractionParallelism) {
+        this.extractionParallelism = Math.max(1, extractionParallelism);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    @DataBoundSetter
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    public long getRetryBaseDelayMillis() {
+        return retryBaseDelayMillis;
+    }
+
+    @DataBoundSetter
+    public void setRetryBaseDelayMillis(long retryBaseDelayMillis) {
+        this.retryBaseDelayMillis = Math.max(0, retryBaseDelayMillis);
+    }
+
+    public long getRetryMaxDelayMillis() {
+        return retryMaxDelayMillis;
+    }
+
+    @DataBoundSetter
+    public void setRetryMaxDelayMillis(long retryMaxDelayMillis) {
+        this.retryMaxDelayMillis = Math.max(0, retryMaxDelayMillis);
+    }
+
+    public int getRetryDeadlineSeconds() {
+        return retryDeadlineSeconds;
+    }
+
+    @DataBoundSetter
+    public void setRetryDeadlineSeconds(int retryDeadlineSeconds) {
+        this.retryDeadlineSeconds = Math.max(0, retryDeadlineSeconds);
+    }
+
+    public int getRetryBudgetPercent() {
+        return retryBudgetPercent;
+    }
+
+    @DataBoundSetter
+    public void setRetryBudgetPercent(int retryBudgetPercent) {
+        this.retryBudgetPercent = Math.max(0, Math.min(100, retryBudgetPercent));
+    }
+
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+        this.circuitBreakerFailureThreshold = Math.max(0, circuitBreakerFailureThreshold);
+    }
+
+    public int getCircuitBreakerOpenSeconds() {
+        return circuitBreakerOpenSeconds;
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerOpenSeconds(int circuitBreakerOpenSeconds) {
+        this.circuitBreakerOpenSeconds = Math.max(1, circuitBreakerOpenSeconds);
+    }
+
+    public long getHedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    @DataBoundSetter
+    public void setHedgeDelayMillis(long hedgeDelayMillis) {
+        this.hedgeDelayMillis = Math.max(0, hedgeDelayMillis);
+    }
+
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds;
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeoutSeconds(int connectTimeoutSeconds) {
+        this.connectTimeoutSeconds = Math.max(1, connectTimeoutSeconds);
+    }
+
+    public int getReadTimeoutSeconds() {
+        return readTimeoutSeconds;
+    }
+
+    @DataBoundSetter
+    public void setReadTimeoutSeconds(int readTimeoutSeconds) {
+        this.readTimeoutSeconds = Math.max(1, readTimeoutSeconds);
+    }
+
+    public long getMinDownloadBytesPerSecond() {
+        return minDownloadBytesPerSecond;
+    }
+
+    @DataBoundSetter
+    public void setMinDownloadBytesPerSecond(long minDownloadBytesPerSecond) {
+        this.minDownloadBytesPerSecond = Math.max(0, minDownloadBytesPerSecond);
+    }
+
+    public int getLowDownloadRateSeconds() {
+        return lowDownloadRateSeconds;
+    }
+
+    @DataBoundSetter
+    public void setLowDownloadRateSeconds(int lowDownloadRateSeconds) {
+        this.lowDownloadRateSeconds = Math.max(1, lowDownloadRateSeconds);
+    }
+
+    public int getDownloadTimeoutSeconds() {
+        return downloadTimeoutSeconds;
+    }
+
+    @DataBoundSetter
+    public void setDownloadTimeoutSeconds(int downloadTimeoutSeconds) {
+        this.downloadTimeoutSeconds = Math.max(0, downloadTimeoutSeconds);
+    }
+
+    public int getMaxDownloadsPerHost() {
+        return maxDownloadsPerHost;
+    }
+
+    @DataBoundSetter
+    public void setMaxDownloadsPerHost(int maxDownloadsPerHost) {
+        this.maxDownloadsPerHost = Math.max(0, maxDownloadsPerHost);
+    }
+
+    public boolean isAdaptiveDownloadLimit() {
+        return adaptiveDownloadLimit;
+    }
+
+    @DataBoundSetter
+    public void setAdaptiveDownloadLimit(boolean adaptiveDownloadLimit) {
+        this.adaptiveDownloadLimit = adaptiveDownloadLimit;
+    }
+
+    public int getBackgroundDownloadThreads() {
+        return backgroundDownloadThreads;
+    }
+
+    @DataBoundSetter
+    public void setBackgroundDownloadThreads(int backgroundDownloadThreads) {
+        this.backgroundDownloadThreads = Math.max(1, backgroundDownloadThreads);
+    }
+
+    public FormValidation doCheckMaxConnections(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckMaxConnectionsPerHost(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckConnectionIdleTimeoutSeconds(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckKeepAliveSeconds(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckCacheQuotaMegabytes(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckStaleWhileRevalidateSeconds(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckStaleIfErrorSeconds(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckExtractionParallelism(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckMaxRetries(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckRetryBaseDelayMillis(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckRetryMaxDelayMillis(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckRetryDeadlineSeconds(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckRetryBudgetPercent(@QueryParameter String value) {
+        FormValidation validation = FormValidation.validateNonNegativeInteger(value);
+        if (validation.kind == FormValidation.Kind.OK && Integer.parseInt(value) > 100) {
+            return FormValidation.error("Must be at most 100");
+        }
+        return validation;
+    }
+
+    public FormValidation doCheckCircuitBreakerFailureThreshold(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckCircuitBreakerOpenSeconds(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckHedgeDelayMillis(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckConnectTimeoutSeconds(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckReadTimeoutSeconds(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckMinDownloadBytesPerSecond(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckLowDownloadRateSeconds(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckDownloadTimeoutSeconds(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckMaxDownloadsPerHost(@QueryParameter String value) {
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckBackgroundDownloadThreads(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+}
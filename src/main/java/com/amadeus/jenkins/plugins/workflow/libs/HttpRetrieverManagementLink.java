@@ -0,0 +1,103 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The page of <i>Manage Jenkins</i> showing the HTTP activity of the retrievers: the counters of
+ * {@link HttpRetrieverMetrics}, the state of each library host, and the progress of the {@link CacheWarmup}.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class HttpRetrieverManagementLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "symbol-library";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "HTTP Shared Libraries";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Activity of the library downloads, state of the library hosts, and warmup of the cache.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "httpLibraryRetriever";
+    }
+
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.ADMINISTER;
+    }
+
+    @NonNull
+    @Override
+    public Category getCategory() {
+        return Category.STATUS;
+    }
+
+    /**
+     * @return the value of each counter, in the order of their declaration
+     */
+    public Map<HttpRetrieverMetrics.Metric, Long> getMetrics() {
+        Map<HttpRetrieverMetrics.Metric, Long> metrics = new LinkedHashMap<>();
+        for (HttpRetrieverMetrics.Metric metric : HttpRetrieverMetrics.Metric.values()) {
+            metrics.put(metric, HttpRetrieverMetrics.get(metric));
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the state of the circuit of each host, by host
+     */
+    public Map<String, String> getCircuits() {
+        Map<String, String> circuits = new LinkedHashMap<>();
+        CircuitBreaker.get().getStates().forEach((host, state) -> circuits.put(host, state.name()));
+        return circuits;
+    }
+
+    /**
+     * @return the number of downloads allowed at the same time against each host, by host, 0 for no limit
+     */
+    public Map<String, Integer> getDownloadLimits() {
+        return AdmissionControl.get().getLimits();
+    }
+
+    /**
+     * @return the number of background tasks waiting for a thread
+     */
+    public int getQueuedBackgroundTasks() {
+        return DownloadScheduler.get().getQueuedTasks();
+    }
+
+    public CacheWarmup getWarmup() {
+        return CacheWarmup.get();
+    }
+
+    /**
+     * Starts warming up the cache again, for instance after new libraries were configured
+     */
+    @RequirePOST
+    public HttpResponse doWarmUp() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        CacheWarmup.get().start();
+        return HttpResponses.redirectToDot();
+    }
+}
@@ -0,0 +1,86 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the HTTP activity of the retrievers since the controller started
+ */
+@Restricted(NoExternalUse.class)
+public final class HttpRetrieverMetrics {
+
+    public enum Metric {
+        /**
+         * Requests sent to the library hosts, not counting their retries nor the resumes of their downloads
+         */
+        REQUESTS,
+        /**
+         * Requests retried after a failure, and downloads resumed after their transfer broke or was too slow
+         */
+        RETRIES,
+        /**
+         * Failed requests not retried, or downloads not resumed, because the retry budget of their host was exhausted
+         */
+        RETRIES_DENIED_BY_BUDGET,
+        /**
+         * Retrievals served from a cached archive because the server failed
+         */
+        STALE_ARCHIVES_USED,
+        /**
+         * Retrievals served from a cached archive while it was revalidated in the background
+         */
+        STALE_WHILE_REVALIDATE,
+        /**
+         * Requests sent to the next mirror because the previous one failed
+         */
+        MIRROR_FAILOVERS,
+        /**
+         * Requests also sent to the next mirror because the previous one was slow to answer
+         */
+        HEDGED_REQUESTS,
+        /**
+         * Downloads given up, then resumed when possible, because their content was received too slowly
+         */
+        SLOW_DOWNLOADS,
+        /**
+         * Downloads that waited for their turn because too many were running against their host
+         */
+        ADMISSION_WAITS,
+        /**
+         * Total time the downloads waited for their turn, in milliseconds
+         */
+        ADMISSION_WAIT_MILLIS
+    }
+
+    private static final Map<Metric, LongAdder> COUNTERS = new EnumMap<>(Metric.class);
+
+    static {
+        for (Metric metric : Metric.values()) {
+            COUNTERS.put(metric, new LongAdder());
+        }
+    }
+
+    private HttpRetrieverMetrics() {
+    }
+
+    static void increment(@NonNull Metric metric) {
+        COUNTERS.get(metric).increment();
+    }
+
+    static void add(@NonNull Metric metric, long value) {
+        COUNTERS.get(metric).add(value);
+    }
+
+    /**
+     * @param metric the counter
+     * @return the current value of the counter
+     */
+    public static long get(@NonNull Metric metric) {
+        return COUNTERS.get(metric).sum();
+    }
+}
@@ -0,0 +1,737 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import jenkins.model.Jenkins;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Library archives downloaded by the {@link HttpRetriever}s, kept on the controller with their ETag and
+ * Last-Modified validators so that the next retrievals can be conditional requests.
+ * <p>
+ * Each entry is a directory named after its key, holding the archive and a {@code metadata.properties} file
+ * pointing to it. Both are replaced atomically, so a reader always sees a consistent pair.
+ * <p>
+ * The entries are looked up in the {@link CacheIndex}, which also records when they were last used. It is rebuilt
+ * from the metadata files when it is missing, for instance for a cache written by an older version.
+ * <p>
+ * The archives are also kept extracted in the {@code trees} directory, under the SHA-256 of their content, so that
+ * archives with the same content share a single tree whatever their URL. A tree is extracted aside and renamed
+ * into place once complete, and is never modified afterwards: its files are made read-only, as they may be
+ * hard-linked into the builds (see {@link MaterializationStrategy#HARD_LINK}).
+ * <p>
+ * The retrievals lease the entries and trees they use, which protects them from {@link #collectGarbage(long)}.
+ */
+@Restricted(NoExternalUse.class)
+final class LibraryArchiveCache {
+
+    private static final Logger LOGGER = Logger.getLogger(LibraryArchiveCache.class.getName());
+
+    static final String CACHE_DIRECTORY = "caches/http-shared-libraries";
+
+    private static final String METADATA_FILE = "metadata.properties";
+    private static final String ARCHIVE_SUFFIX = ".archive";
+    private static final String URL = "url";
+    private static final String ARCHIVE = "archive";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String VALIDATED_AT = "validatedAt";
+    private static final String MAX_AGE = "maxAge";
+    private static final String DIGEST = "digest";
+    private static final String TREES_DIRECTORY = "trees";
+    private static final String STAGING_PREFIX = ".staging-";
+    private static final String TRASH_PREFIX = ".trash-";
+
+    /**
+     * Trees used more recently are never deleted, since a retrieval may be about to lease them
+     */
+    private static final long TREE_GRACE_PERIOD = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Staging directories older than that are left over by an interrupted extraction
+     */
+    private static final long STAGING_EXPIRATION = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Writes the content of an archive being stored
+     */
+    @FunctionalInterface
+    interface ArchiveWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static LibraryArchiveCache instance;
+
+    private final Path root;
+
+    /**
+     * Number of leases by cache key and by tree digest, which cannot collide since they are both SHA-256
+     */
+    private final Map<String, Integer> leases = new HashMap<>();
+
+    private volatile CacheIndex index;
+
+    /**
+     * When the cache directory was last swept for the files left over by interrupted operations
+     */
+    private long lastSweep;
+
+    LibraryArchiveCache(@NonNull Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Accessor for the cache of the controller
+     *
+     * @return the cache stored in the Jenkins home directory
+     */
+    @NonNull
+    static synchronized LibraryArchiveCache get() {
+        if (instance == null) {
+            instance = new LibraryArchiveCache(Jenkins.get().getRootDir().toPath().resolve(CACHE_DIRECTORY));
+        }
+        return instance;
+    }
+
+    /**
+     * Computes the key of an archive. The user is part of it since the server may serve different content,
+     * or no content at all, depending on who asks.
+     *
+     * @param url         resolved URL of the archive
+     * @param credentials credentials used to download it, if any
+     * @return the cache key
+     */
+    @NonNull
+    static String keyOf(@NonNull String url, @CheckForNull UsernamePasswordCredentials credentials) {
+        String user = credentials == null ? "" : credentials.getUsername();
+        return DigestUtils.sha256Hex(url + "\n" + user);
+    }
+
+    @NonNull
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Looks up an archive
+     *
+     * @param key the cache key
+     * @return the cached archive, or null if there is none
+     */
+    @CheckForNull
+    CachedArchive lookup(@NonNull String key) {
+        CacheIndex.Entry entry;
+        try {
+            entry = index().get(key);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot open the index of the cache " + root, e);
+            return null;
+        }
+        if (entry == null || !Files.isRegularFile(entry.getArchive().getArchive())) {
+            return null;
+        }
+        return entry.getArchive();
+    }
+
+    /**
+     * Accessor for the index, opened on first use
+     */
+    private CacheIndex index() throws IOException {
+        CacheIndex opened = index;
+        if (opened == null) {
+            synchronized (this) {
+                opened = index;
+                if (opened == null) {
+                    opened = openIndex();
+                    index = opened;
+                }
+            }
+        }
+        return opened;
+    }
+
+    private CacheIndex openIndex() throws IOException {
+        Files.createDirectories(root);
+        CacheIndex opened;
+        try {
+            opened = CacheIndex.open(root);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Rebuilding the unreadable index of the cache " + root, e);
+            Files.deleteIfExists(root.resolve(CacheIndex.FILE_NAME));
+            opened = CacheIndex.open(root);
+        }
+        if (opened.isCreated()) {
+            for (Path entry : list(root)) {
+                if (Files.isDirectory(entry) && !entry.getFileName().toString().equals(TREES_DIRECTORY)) {
+                    CachedArchive archive = readMetadata(entry.getFileName().toString());
+                    if (archive != null) {
+                        opened.put(archive, sizeOf(archive.getArchive()),
+                                lastModified(entry.resolve(METADATA_FILE)));
+                    }
+                }
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Reads the metadata file of an entry, which the index is rebuilt from
+     */
+    @CheckForNull
+    private CachedArchive readMetadata(String key) {
+        Path entry = root.resolve(key);
+        Properties metadata = new Properties();
+        try (Reader reader = Files.newBufferedReader(entry.resolve(METADATA_FILE), StandardCharsets.UTF_8)) {
+            metadata.load(reader);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable cache entry " + entry, e);
+            return null;
+        }
+        String archiveName = metadata.getProperty(ARCHIVE);
+        String url = metadata.getProperty(URL);
+        if (archiveName == null || url == null || !Files.isRegularFile(entry.resolve(archiveName))) {
+            return null;
+        }
+        CacheControl cacheControl = new CacheControl(parseLong(metadata.getProperty(MAX_AGE), -1));
+        return new CachedArchive(key, url, entry.resolve(archiveName), metadata.getProperty(ETAG),
+                metadata.getProperty(LAST_MODIFIED), metadata.getProperty(DIGEST), cacheControl,
+                parseLong(metadata.getProperty(VALIDATED_AT), 0));
+    }
+
+    /**
+     * Stores a freshly downloaded archive, replacing the previous one if any
+     *
+     * @param key          the cache key
+     * @param url          resolved URL of the archive
+     * @param content      content of the archive, read until its end but not closed
+     * @param etag         ETag header of the response, if any
+     * @param lastModified Last-Modified header of the response, if any
+     * @param cacheControl Cache-Control directives of the response
+     * @return the cached archive
+     * @throws IOException if the archive cannot be written
+     */
+    @NonNull
+    CachedArchive store(@NonNull String key, @NonNull String url, @NonNull InputStream content,
+                        @CheckForNull String etag, @CheckForNull String lastModified,
+                        @NonNull CacheControl cacheControl) throws IOException {
+        return store(key, url, out -> IOUtils.copy(content, out), etag, lastModified, cacheControl);
+    }
+
+    /**
+     * Stores a freshly downloaded archive, replacing the previous one if any
+     *
+     * @param key          the cache key
+     * @param url          resolved URL of the archive
+     * @param writer       writes the content of the archive
+     * @param etag         ETag header of the response, if any
+     * @param lastModified Last-Modified header of the response, if any
+     * @param cacheControl Cache-Control directives of the response
+     * @return the cached archive
+     * @throws IOException if the archive cannot be written
+     */
+    @NonNull
+    CachedArchive store(@NonNull String key, @NonNull String url, @NonNull ArchiveWriter writer,
+                        @CheckForNull String etag, @CheckForNull String lastModified,
+                        @NonNull CacheControl cacheControl) throws IOException {
+        Path entry = Files.createDirectories(root.resolve(key));
+        CachedArchive previous = lookup(key);
+        Path archive = entry.resolve(UUID.randomUUID() + ARCHIVE_SUFFIX);
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        try {
+            try (OutputStream out = new DigestOutputStream(
+                    Files.newOutputStream(archive, StandardOpenOption.CREATE_NEW), digest)) {
+                writer.writeTo(out);
+            }
+            CachedArchive stored = new CachedArchive(key, url, archive, etag, lastModified,
+                    Hex.encodeHexString(digest.digest()), cacheControl, System.currentTimeMillis());
+            writeMetadata(stored);
+            if (previous != null) {
+                deleteQuietly(previous.getArchive());
+            }
+            return stored;
+        } catch (IOException e) {
+            deleteQuietly(archive);
+            throw e;
+        }
+    }
+
+    /**
+     * Records that the server confirmed an archive is still up-to-date
+     *
+     * @param archive      the cached archive
+     * @param cacheControl Cache-Control directives of the 304 response, which replace the stored ones if present
+     * @return the updated archive
+     * @throws IOException if the metadata cannot be written
+     */
+    @NonNull
+    CachedArchive revalidated(@NonNull CachedArchive archive, @NonNull CacheControl cacheControl) throws IOException {
+        CachedArchive updated = cacheControl == CacheControl.NONE ? archive : archive.withCacheControl(cacheControl);
+        CachedArchive revalidated = updated.withValidatedAt(System.currentTimeMillis());
+        writeMetadata(revalidated);
+        return revalidated;
+    }
+
+    /**
+     * Accessor for the extracted tree of an archive, extracting it first if needed
+     *
+     * @param archive     the cached archive
+     * @param parallelism maximum number of files extracted at the same time
+     * @return the directory holding the content of the archive, which must not be modified
+     * @throws IOException if the archive cannot be extracted
+     */
+    @NonNull
+    Path tree(@NonNull CachedArchive archive, int parallelism) throws IOException {
+        String digest = withDigest(archive).getDigest();
+        Path tree = root.resolve(TREES_DIRECTORY).resolve(digest);
+        // Used now, as far as the garbage collection is concerned
+        index().accessed(archive.getKey(), System.currentTimeMillis());
+        if (Files.isDirectory(tree)) {
+            touch(tree);
+            return tree;
+        }
+        Path staging = newStagingTree();
+        try {
+            ArchiveExtractor.extract(archive.getArchive(), staging, parallelism);
+        } catch (IOException e) {
+            deleteRecursively(staging);
+            throw e;
+        }
+        return publishTree(staging, digest);
+    }
+
+    /**
+     * Computes the digest of the archives cached by older versions
+     */
+    private CachedArchive withDigest(CachedArchive archive) throws IOException {
+        if (archive.getDigest() != null) {
+            return archive;
+        }
+        String digest;
+        try (InputStream in = Files.newInputStream(archive.getArchive())) {
+            digest = DigestUtils.sha256Hex(in);
+        }
+        CachedArchive updated = archive.withDigest(digest);
+        writeMetadata(updated);
+        return updated;
+    }
+
+    /**
+     * Leases a cache entry, so that it is not evicted while it is used
+     *
+     * @param key the cache key
+     * @return the lease, to close once the entry is no longer needed
+     */
+    @NonNull
+    Lease lease(@NonNull String key) {
+        acquire(key);
+        return new Lease(key);
+    }
+
+    /**
+     * Protects a cache entry, and the trees obtained through it, from the garbage collection until it is closed
+     */
+    final class Lease implements Closeable {
+        private final String key;
+        private final List<String> digests = new ArrayList<>();
+        private boolean closed;
+
+        private Lease(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Accessor for the extracted tree of an archive, extracting it first if needed. The tree is kept
+         * until the lease is closed.
+         *
+         * @param archive     the cached archive
+         * @param parallelism maximum number of files extracted at the same time
+         * @return the directory holding the content of the archive, which must not be modified
+         * @throws IOException if the archive cannot be extracted
+         */
+        @NonNull
+        synchronized Path tree(@NonNull CachedArchive archive, int parallelism) throws IOException {
+            CachedArchive withDigest = withDigest(archive);
+            acquire(withDigest.getDigest());
+            digests.add(withDigest.getDigest());
+            return LibraryArchiveCache.this.tree(withDigest, parallelism);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(key);
+                digests.forEach(LibraryArchiveCache.this::release);
+            }
+        }
+    }
+
+    private void acquire(String name) {
+        synchronized (leases) {
+            leases.merge(name, 1, Integer::sum);
+        }
+    }
+
+    private void release(String name) {
+        synchronized (leases) {
+            leases.computeIfPresent(name, (n, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    /**
+     * Deletes what is no longer needed: the trees no entry refers to, and the files left over by interrupted
+     * operations. Then, if the cache is over its quota, evicts the least recently used entries until it fits.
+     * The leased entries and trees are never deleted.
+     *
+     * @param quota maximum size of the cache in bytes, 0 for no limit
+     * @return the size of the cache once collected
+     * @throws IOException if the cache cannot be listed
+     */
+    synchronized long collectGarbage(long quota) throws IOException {
+        long now = System.currentTimeMillis();
+        CacheIndex index = index();
+        Path trees = root.resolve(TREES_DIRECTORY);
+        if (now - lastSweep >= STAGING_EXPIRATION) {
+            sweep(index, trees, now);
+            lastSweep = now;
+        }
+        List<CacheIndex.Entry> entries = new ArrayList<>(index.entries());
+        Map<String, Integer> references = new HashMap<>();
+        long size = 0;
+        for (CacheIndex.Entry entry : entries) {
+            size += entry.getSize();
+            String digest = entry.getArchive().getDigest();
+            if (digest != null) {
+                references.merge(digest, 1, Integer::sum);
+            }
+        }
+        for (Path tree : list(trees)) {
+            String name = tree.getFileName().toString();
+            if (name.startsWith(STAGING_PREFIX) || name.startsWith(TRASH_PREFIX)) {
+                if (name.startsWith(TRASH_PREFIX) || isOlderThan(tree, STAGING_EXPIRATION, now)) {
+                    deleteRecursively(tree);
+                }
+            } else if (references.containsKey(name) || !deleteTreeUnlessUsed(name, tree, now)) {
+                size += treeSize(name, tree);
+            }
+        }
+        if (quota > 0 && size > quota) {
+            size = evict(entries, references, size, quota, now);
+        }
+        index.flushAccesses();
+        index.compactIfNeeded();
+        return size;
+    }
+
+    /**
+     * Evicts the least recently used entries, and their trees, until the cache fits its quota
+     */
+    private long evict(List<CacheIndex.Entry> entries, Map<String, Integer> references, long size, long quota,
+                       long now) throws IOException {
+        Path trees = root.resolve(TREES_DIRECTORY);
+        entries.sort(Comparator.comparingLong(CacheIndex.Entry::getLastAccess));
+        for (CacheIndex.Entry entry : entries) {
+            if (size <= quota) {
+                break;
+            }
+            CachedArchive archive = entry.getArchive();
+            if (!deleteUnlessLeased(archive.getKey(), archive.getArchive().getParent(), 0, now)) {
+                continue;
+            }
+            LOGGER.log(Level.FINE, "Evicted {0} from the cache", archive.getUrl());
+            size -= entry.getSize();
+            String digest = archive.getDigest();
+            if (digest != null && references.merge(digest, -1, Integer::sum) == 0) {
+                Path tree = trees.resolve(digest);
+                long treeSize = Files.isDirectory(tree) ? treeSize(digest, tree) : 0;
+                if (deleteTreeUnlessUsed(digest, tree, now)) {
+                    size -= treeSize;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Deletes the entries that are not indexed, or whose archive is missing, and the files left over in the
+     * indexed ones
+     */
+    private void sweep(CacheIndex index, Path trees, long now) throws IOException {
+        for (Path entry : list(root)) {
+            if (entry.equals(trees) || !Files.isDirectory(entry)) {
+                continue;
+            }
+            String key = entry.getFileName().toString();
+            CachedArchive archive = lookup(key);
+            if (archive == null) {
+                // Interrupted before its metadata was written, or unreadable
+                deleteUnlessLeased(key, entry, STAGING_EXPIRATION, now);
+            } else {
+                deleteLeftovers(entry, archive, now);
+            }
+        }
+        for (CacheIndex.Entry entry : index.entries()) {
+            String key = entry.getArchive().getKey();
+            if (Files.notExists(root.resolve(key))) {
+                deleteUnlessLeased(key, root.resolve(key), 0, now);
+            }
+        }
+    }
+
+    private boolean deleteUnlessLeased(String key, Path entry, long minAge, long now) throws IOException {
+        synchronized (leases) {
+            if (leases.containsKey(key) || !isOlderThan(entry, minAge, now)) {
+                return false;
+            }
+            index().remove(key);
+            deleteRecursively(entry);
+            return true;
+        }
+    }
+
+    /**
+     * Deletes a tree, unless it is leased or was used recently
+     *
+     * @return whether the tree was deleted
+     */
+    private boolean deleteTreeUnlessUsed(String digest, Path tree, long now) throws IOException {
+        Path trash;
+        synchronized (leases) {
+            if (leases.containsKey(digest) || !isOlderThan(tree, TREE_GRACE_PERIOD, now)) {
+                return false;
+            }
+            // Moved away first, since deleting a large tree takes a while
+            trash = tree.resolveSibling(TRASH_PREFIX + UUID.randomUUID());
+            try {
+                Files.move(tree, trash, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+        }
+        index().removeTree(digest);
+        deleteRecursively(trash);
+        return true;
+    }
+
+    /**
+     * Deletes the files of an entry that are neither its metadata nor its archive, once they are old enough
+     * not to be written by a running download
+     */
+    private static void deleteLeftovers(Path entry, CachedArchive archive, long now) throws IOException {
+        for (Path file : list(entry)) {
+            String name = file.getFileName().toString();
+            if (!name.equals(METADATA_FILE) && !file.equals(archive.getArchive())
+                    && isOlderThan(file, STAGING_EXPIRATION, now)) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    private long treeSize(String digest, Path tree) throws IOException {
+        Long size = index().getTreeSize(digest);
+        if (size == null) {
+            // Trees never change once published
+            try (Stream<Path> files = Files.walk(tree)) {
+                size = files.filter(Files::isRegularFile).mapToLong(LibraryArchiveCache::sizeOf).sum();
+            }
+            index().putTree(digest, size);
+        }
+        return size;
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> children = Files.list(directory)) {
+            return children.collect(Collectors.toList());
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean isOlderThan(Path path, long age, long now) {
+        return now - lastModified(path) >= age;
+    }
+
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not update the access time of " + path, e);
+        }
+    }
+
+    /**
+     * Creates a directory where to extract a tree before it is published
+     *
+     * @return a new empty directory
+     * @throws IOException if the directory cannot be created
+     */
+    @NonNull
+    Path newStagingTree() throws IOException {
+        Path trees = Files.createDirectories(root.resolve(TREES_DIRECTORY));
+        return Files.createTempDirectory(trees, STAGING_PREFIX);
+    }
+
+    /**
+     * Makes a tree extracted in a staging directory available, with read-only files
+     *
+     * @param staging the staging directory holding the complete tree
+     * @param digest  SHA-256 of the archive the tree was extracted from
+     * @return the published tree
+     * @throws IOException if the tree cannot be published
+     */
+    @NonNull
+    Path publishTree(@NonNull Path staging, @NonNull String digest) throws IOException {
+        Path tree = root.resolve(TREES_DIRECTORY).resolve(digest);
+        try {
+            makeReadOnly(staging);
+        } catch (IOException e) {
+            deleteRecursively(staging);
+            throw e;
+        }
+        try {
+            Files.move(staging, tree, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileSystemException e) {
+            if (!Files.isDirectory(tree)) {
+                throw e;
+            }
+            // Already extracted meanwhile, from an archive with the same content
+            deleteRecursively(staging);
+        }
+        return tree;
+    }
+
+    /**
+     * Removes the write permission of the files of a tree, so that a build cannot modify the files it shares with
+     * the other builds through hard links. The directories are left writable, for the tree to be deleted.
+     */
+    private static void makeReadOnly(Path tree) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(tree)) {
+            files = paths.filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            if (!file.toFile().setWritable(false, false)) {
+                throw new IOException("Cannot make " + file + " read-only");
+            }
+        }
+    }
+
+    private void writeMetadata(CachedArchive archive) throws IOException {
+        Properties metadata = new Properties();
+        metadata.setProperty(URL, archive.getUrl());
+        metadata.setProperty(ARCHIVE, archive.getArchive().getFileName().toString());
+        metadata.setProperty(VALIDATED_AT, Long.toString(archive.getValidatedAt()));
+        metadata.setProperty(MAX_AGE, Long.toString(archive.getCacheControl().getMaxAgeSeconds()));
+        if (archive.getEtag() != null) {
+            metadata.setProperty(ETAG, archive.getEtag());
+        }
+        if (archive.getLastModified() != null) {
+            metadata.setProperty(LAST_MODIFIED, archive.getLastModified());
+        }
+        if (archive.getDigest() != null) {
+            metadata.setProperty(DIGEST, archive.getDigest());
+        }
+        Path entry = archive.getArchive().getParent();
+        Path tmp = Files.createTempFile(entry, METADATA_FILE, ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                metadata.store(writer, null);
+            }
+            moveAtomically(tmp, entry.resolve(METADATA_FILE));
+        } catch (IOException e) {
+            deleteQuietly(tmp);
+            throw e;
+        }
+        index().put(archive, sizeOf(archive.getArchive()), System.currentTimeMillis());
+    }
+
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not delete " + path, e);
+        }
+    }
+
+    static void deleteRecursively(Path path) {
+        try {
+            Util.deleteRecursive(path.toFile());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not delete " + path, e);
+        }
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return value == null ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * How an extracted library is placed into the directory of the build, once it is ready in the workspace
+ * where it was extracted, or in the tree of the {@link LibraryArchiveCache}.
+ * <p>
+ * The extraction always writes new files rather than overwriting existing ones, so files linked into
+ * previous builds are never modified. The files of the trees of the cache are read-only, so that a build cannot modify
+ * them through its links either; the copies are made writable by their owner, as the copied files always were.
+ */
+@Restricted(NoExternalUse.class)
+public enum MaterializationStrategy {
+
+    /**
+     * Copies every file, the historical behavior
+     */
+    COPY("Copy the files") {
+        @Override
+        void materialize(@NonNull Path source, @NonNull Path target) throws IOException {
+            copy(source, target);
+        }
+    },
+
+    /**
+     * Creates hard links to the extracted files, copying them only if links are not supported,
+     * for instance when the build directory is on another file system.
+     * <p>
+     * The files are also copied from non-POSIX file systems: there, the read-only attribute is shared by all the
+     * links of a file, and has to be cleared to delete one of them, which would make the source writable again.
+     */
+    HARD_LINK("Link the files") {
+        @Override
+        void materialize(@NonNull Path source, @NonNull Path target) throws IOException {
+            if (!source.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                copy(source, target);
+                return;
+            }
+            walk(source, target, new FileAction() {
+                private boolean linkable = true;
+
+                @Override
+                public void apply(Path file, Path targetFile) throws IOException {
+                    if (linkable) {
+                        try {
+                            Files.deleteIfExists(targetFile);
+                            Files.createLink(targetFile, file);
+                            return;
+                        } catch (UnsupportedOperationException | FileSystemException e) {
+                            LOGGER.log(Level.FINE, "Cannot link " + file + " to " + targetFile + ", copying instead", e);
+                            linkable = false;
+                        }
+                    }
+                    copyFile(file, targetFile);
+                }
+            });
+        }
+    },
+
+    /**
+     * Moves the extracted files, which are extracted again for the next build. Each top-level entry is renamed
+     * at once, falling back to a copy when it cannot be renamed, for instance across file systems.
+     * <p>
+     * The files shared with other builds, such as the trees of the {@link LibraryArchiveCache}, are copied instead.
+     */
+    MOVE("Move the files") {
+        @Override
+        void materialize(@NonNull Path source, @NonNull Path target) throws IOException {
+            Files.createDirectories(target);
+            for (Path child : list(source)) {
+                Path targetChild = target.resolve(child.getFileName().toString());
+                if (Files.notExists(targetChild)) {
+                    try {
+                        Files.move(child, targetChild, StandardCopyOption.ATOMIC_MOVE);
+                        continue;
+                    } catch (AtomicMoveNotSupportedException e) {
+                        LOGGER.log(Level.FINE, "Cannot move " + child + " to " + targetChild + ", copying instead", e);
+                    }
+                }
+                copy(child, targetChild);
+            }
+        }
+    };
+
+    private static final Logger LOGGER = Logger.getLogger(MaterializationStrategy.class.getName());
+
+    private final String displayName;
+
+    MaterializationStrategy(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Accessor for the label shown in the configuration page
+     *
+     * @return the label of the strategy
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Accessor for the strategy to use when the extracted library is shared with other builds, and so must be
+     * left in place
+     *
+     * @return {@link #COPY} instead of {@link #MOVE}, so that the build gets files of its own as it would have, this
+     * strategy otherwise
+     */
+    @NonNull
+    MaterializationStrategy forSharedSource() {
+        return this == MOVE ? COPY : this;
+    }
+
+    /**
+     * Places an extracted library into the directory of a build
+     *
+     * @param source directory where the library was extracted
+     * @param target directory of the build, created if needed, where files of the same name are replaced
+     * @throws IOException if the library cannot be placed there
+     */
+    abstract void materialize(@NonNull Path source, @NonNull Path target) throws IOException;
+
+    /**
+     * Applied to each regular file of a tree
+     */
+    @FunctionalInterface
+    private interface FileAction {
+        void apply(Path file, Path targetFile) throws IOException;
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        walk(source, target, MaterializationStrategy::copyFile);
+    }
+
+    private static void copyFile(Path file, Path targetFile) throws IOException {
+        Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        if (!targetFile.toFile().setWritable(true)) {
+            throw new IOException("Cannot make " + targetFile + " writable");
+        }
+    }
+
+    /**
+     * Recreates the directories of a tree, applying an action to each of its files
+     */
+    private static void walk(Path source, Path target, FileAction action) throws IOException {
+        if (!Files.isDirectory(source)) {
+            Files.createDirectories(target.getParent());
+            action.apply(source, target);
+            return;
+        }
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                action.apply(file, target.resolve(source.relativize(file).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> children = Files.list(directory)) {
+            return children.collect(Collectors.toList());
+        }
+    }
+}
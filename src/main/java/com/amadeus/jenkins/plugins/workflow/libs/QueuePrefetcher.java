@@ -0,0 +1,145 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Extension;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.queue.QueueListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.libs.FolderLibraries;
+import org.jenkinsci.plugins.workflow.libs.GlobalLibraries;
+import org.jenkinsci.plugins.workflow.libs.LibraryConfiguration;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Starts downloading the libraries a job retrieved over HTTP in its previous build (see {@link HttpLibrariesAction})
+ * into the controller cache as soon as its next build enters the queue, so that they are typically ready by the time
+ * an executor is assigned to it.
+ * <p>
+ * The libraries are looked up by name where the previous build found them, in a folder of the job or among the global
+ * libraries, so that the current configuration of their retriever is used, and their credentials are looked up as the
+ * previous build did. The lookups and the downloads run in the background (see {@link DownloadScheduler}), after the ones of
+ * the running builds.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class QueuePrefetcher extends QueueListener {
+
+    private static final Logger LOGGER = Logger.getLogger(QueuePrefetcher.class.getName());
+
+    @Override
+    public void onEnterWaiting(Queue.WaitingItem item) {
+        HttpRetrieverConfiguration configuration = HttpRetrieverConfiguration.get();
+        if (!configuration.isQueuePrefetch() || !configuration.isCacheEnabled() || !(item.task instanceof Job)) {
+            return;
+        }
+        // Called with the lock of the queue held: the builds and libraries are looked up by the background task
+        String jobName = ((Job<?, ?>) item.task).getFullName();
+        DownloadScheduler.get().submit(DownloadScheduler.Priority.BACKGROUND, () -> {
+            prefetch(jobName);
+            return null;
+        });
+    }
+
+    private static void prefetch(String jobName) {
+        Run<?, ?> previous;
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            Job<?, ?> job = Jenkins.get().getItemByFullName(jobName, Job.class);
+            previous = job == null ? null : job.getLastBuild();
+        }
+        HttpLibrariesAction action = previous == null ? null : previous.getAction(HttpLibrariesAction.class);
+        if (action == null) {
+            return;
+        }
+        for (HttpLibrariesAction.Library library : action.getLibraries()) {
+            HttpRetriever retriever;
+            try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+                retriever = library.getScope() == null ? null : findRetriever(library.getScope(), library.getName());
+            }
+            if (retriever == null) {
+                continue;
+            }
+            Run<?, ?> build = previous;
+            DownloadScheduler.get().submit(DownloadScheduler.Priority.BACKGROUND, () -> {
+                try {
+                    retriever.prefetch(library.getName(), library.getVersion(), build,
+                            DownloadScheduler.Priority.BACKGROUND, TaskListener.NULL);
+                } catch (Exception e) {
+                    // The build retrieves the library itself anyway, and reports the failure if it persists
+                    LOGGER.log(Level.FINE, "Failed to prefetch " + library + " for " + jobName, e);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Finds where a build found the configuration of a library
+     *
+     * @param job       the job of the build
+     * @param retriever the retriever of the library
+     * @return the full name of the folder of the job defining the library, empty for a global library, or null if
+     * the library is defined neither way
+     */
+    @CheckForNull
+    static String scopeOf(Job<?, ?> job, HttpRetriever retriever) {
+        for (ItemGroup<?> parent = job.getParent(); parent instanceof AbstractFolder;
+             parent = ((AbstractFolder<?>) parent).getParent()) {
+            FolderLibraries folderLibraries = ((AbstractFolder<?>) parent).getProperties().get(FolderLibraries.class);
+            if (folderLibraries != null && defines(folderLibraries.getLibraries(), retriever)) {
+                return parent.getFullName();
+            }
+        }
+        return defines(GlobalLibraries.get().getLibraries(), retriever) ? "" : null;
+    }
+
+    private static boolean defines(List<LibraryConfiguration> libraries, HttpRetriever retriever) {
+        for (LibraryConfiguration library : libraries) {
+            if (library.getRetriever() == retriever) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @CheckForNull
+    private static HttpRetriever findRetriever(String scope, String name) {
+        List<LibraryConfiguration> libraries;
+        if (scope.isEmpty()) {
+            libraries = GlobalLibraries.get().getLibraries();
+        } else {
+            AbstractFolder<?> folder = Jenkins.get().getItemByFullName(scope, AbstractFolder.class);
+            FolderLibraries folderLibraries = folder == null ? null : folder.getProperties().get(FolderLibraries.class);
+            if (folderLibraries == null) {
+                return null;
+            }
+            libraries = folderLibraries.getLibraries();
+        }
+        LibraryConfiguration configuration = find(libraries, name);
+        if (configuration == null || !(configuration.getRetriever() instanceof HttpRetriever)) {
+            return null;
+        }
+        return (HttpRetriever) configuration.getRetriever();
+    }
+
+    @CheckForNull
+    private static LibraryConfiguration find(List<LibraryConfiguration> libraries, String name) {
+        for (LibraryConfiguration library : libraries) {
+            if (library.getName().equals(name)) {
+                return library;
+            }
+        }
+        return null;
+    }
+}
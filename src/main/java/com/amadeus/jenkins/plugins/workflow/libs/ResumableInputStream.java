@@ -0,0 +1,233 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The content of a download, which picks up where it stopped when the connection breaks before the end.
+ * <p>
+ * When the server advertises {@code Accept-Ranges: bytes} and gives a validator ({@code ETag} or
+ * {@code Last-Modified}), a failed read is followed by a request of the missing bytes only, with {@code Range} and
+ * {@code If-Range} so that they are never appended to the bytes of another version of the archive. The bytes
+ * already read are kept by the reader, so a connection dropped halfway through a large archive costs only the
+ * missing half. The content is also checked against its {@code Content-Length}: a body ending early is resumed the
+ * same way, or else fails instead of being taken for a whole archive.
+ * <p>
+ * When a {@link DownloadWatchdog} is attached to the context, a transfer slower than its minimum rate is resumed
+ * the same way, and the download stops once its deadline is passed.
+ * <p>
+ * A resume is a retry of the download: it takes a token from the {@link RetryBudget} of the host, and is not counted
+ * as a new request since it reuses the context of the download.
+ */
+@Restricted(NoExternalUse.class)
+final class ResumableInputStream extends InputStream {
+
+    private static final Logger LOGGER = Logger.getLogger(ResumableInputStream.class.getName());
+
+    /**
+     * Maximum number of times a single download is resumed
+     */
+    static final int MAX_RESUMES = 5;
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-\\d+/(\\d+|\\*)");
+
+    private final CloseableHttpClient client;
+    private final HttpClientContext context;
+    private final URI uri;
+    private final long contentLength;
+    private final String validator;
+    private final boolean acceptsRanges;
+    private final DownloadWatchdog watchdog;
+    private final RetryBudget retryBudget;
+
+    private CloseableHttpResponse response;
+    private InputStream content;
+    private long position;
+    private int resumes;
+    private boolean broken;
+
+    /**
+     * @param client   the client the download was made with
+     * @param context  the context the download was made with, reused for the authentication
+     * @param uri      the URI of the download
+     * @param response the successful response of the download, also closed by this stream
+     * @throws IOException if the content cannot be read
+     */
+    ResumableInputStream(@NonNull CloseableHttpClient client, @NonNull HttpClientContext context, @NonNull URI uri,
+                         @NonNull CloseableHttpResponse response) throws IOException {
+        this(client, context, uri, response, RetryBudget.get());
+    }
+
+    ResumableInputStream(@NonNull CloseableHttpClient client, @NonNull HttpClientContext context, @NonNull URI uri,
+                         @NonNull CloseableHttpResponse response, @NonNull RetryBudget retryBudget)
+            throws IOException {
+        this.client = client;
+        this.retryBudget = retryBudget;
+        this.context = context;
+        this.uri = uri;
+        this.response = response;
+        HttpEntity entity = response.getEntity();
+        // Unknown when the client decompresses a content encoding, whose positions do not match the ranges
+        this.contentLength = entity.getContentLength();
+        this.validator = getValidator(response);
+        this.acceptsRanges = "bytes".equalsIgnoreCase(getHeaderValue(response, HttpHeaders.ACCEPT_RANGES));
+        this.content = entity.getContent();
+        this.watchdog = DownloadWatchdog.get(context);
+        if (watchdog != null) {
+            watchdog.restart(0);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        while (true) {
+            int read;
+            try {
+                if (watchdog != null) {
+                    // Checked before reading so that the bytes read are never lost
+                    watchdog.check(position);
+                }
+                read = content.read(b, off, len);
+            } catch (IOException e) {
+                resume(e);
+                continue;
+            }
+            if (read < 0) {
+                if (contentLength >= 0 && position < contentLength) {
+                    resume(new EOFException("Premature end of " + uri + " after " + position + " of "
+                            + contentLength + " bytes"));
+                    continue;
+                }
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (broken) {
+            // Not drained, which could take forever: the connection is closed instead of going back to the pool
+            response.close();
+            return;
+        }
+        try {
+            // Releases the connection to the pool once the content is read
+            content.close();
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Requests the rest of the content, or fails with the error that stopped the download
+     */
+    private void resume(IOException failure) throws IOException {
+        broken = true;
+        if (!acceptsRanges || validator == null || contentLength < 0 || resumes >= MAX_RESUMES
+                || failure instanceof DownloadWatchdog.DeadlineExceededException
+                || Thread.currentThread().isInterrupted()) {
+            throw failure;
+        }
+        if (!retryBudget.tryRetry(RetryBudget.targetHost(context))) {
+            failure.addSuppressed(new IOException("Cannot resume the download of " + uri
+                    + ": the retry budget of its host is exhausted"));
+            throw failure;
+        }
+        resumes++;
+        closeQuietly(response);
+        LOGGER.log(Level.FINE, "Resuming the download of " + uri + " at byte " + position, failure);
+        HttpGet get = new HttpGet(uri);
+        get.setHeader(HttpHeaders.RANGE, "bytes=" + position + "-");
+        get.setHeader(HttpHeaders.IF_RANGE, validator);
+        // The ranges are positions in the bytes sent by the server
+        get.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        CloseableHttpResponse resumed;
+        try {
+            resumed = client.execute(get, context);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+            throw failure;
+        }
+        int statusCode = resumed.getStatusLine().getStatusCode();
+        if (statusCode != HttpStatus.SC_PARTIAL_CONTENT || !startsAtPosition(resumed)) {
+            // A 200 means the archive changed since the download started
+            EntityUtils.consumeQuietly(resumed.getEntity());
+            closeQuietly(resumed);
+            failure.addSuppressed(new IOException("Cannot resume the download of " + uri + " at byte " + position
+                    + ". Returned code: " + statusCode));
+            throw failure;
+        }
+        response = resumed;
+        content = resumed.getEntity().getContent();
+        broken = false;
+        if (watchdog != null) {
+            watchdog.restart(position);
+        }
+    }
+
+    private boolean startsAtPosition(HttpResponse resumed) {
+        String contentRange = getHeaderValue(resumed, HttpHeaders.CONTENT_RANGE);
+        if (contentRange == null) {
+            return false;
+        }
+        Matcher matcher = CONTENT_RANGE.matcher(contentRange.trim());
+        return matcher.matches() && Long.parseLong(matcher.group(1)) == position
+                && ("*".equals(matcher.group(2)) || Long.parseLong(matcher.group(2)) == contentLength);
+    }
+
+    /**
+     * A strong entity tag, or else the modification date, which a server compares to the current version before
+     * sending a range
+     */
+    @CheckForNull
+    private static String getValidator(HttpResponse response) {
+        String etag = getHeaderValue(response, HttpHeaders.ETAG);
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return getHeaderValue(response, HttpHeaders.LAST_MODIFIED);
+    }
+
+    @CheckForNull
+    private static String getHeaderValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    private static void closeQuietly(CloseableHttpResponse response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close the interrupted response", e);
+        }
+    }
+}
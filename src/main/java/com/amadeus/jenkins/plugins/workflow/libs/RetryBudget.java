@@ -0,0 +1,144 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits the retries sent to each host to a share of its requests, so that the retries do not multiply the load
+ * of a server already struggling.
+ * <p>
+ * Each host has a bucket of tokens: every request adds the configured share of a token, every retry takes a whole
+ * one, and a retry is given up when the bucket is empty. The bucket starts full, holds at most
+ * {@link #CAPACITY} tokens, and also slowly refills over time so that a host receiving few requests can still
+ * be retried from time to time.
+ */
+@Restricted(NoExternalUse.class)
+final class RetryBudget {
+
+    private static final Logger LOGGER = Logger.getLogger(RetryBudget.class.getName());
+
+    /**
+     * Maximum number of tokens of a host, hence of retries in a burst
+     */
+    static final double CAPACITY = 10;
+
+    /**
+     * Tokens added to every bucket per second, whatever the requests
+     */
+    static final double RESERVE_PER_SECOND = 0.1;
+
+    /**
+     * Attribute of the context of the requests already recorded
+     */
+    private static final String COUNTED = RetryBudget.class.getName() + ".counted";
+
+    private static final RetryBudget INSTANCE = new RetryBudget(
+            () -> HttpRetrieverConfiguration.get().getRetryBudgetPercent());
+
+    private final IntSupplier percent;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param percent share of the requests that can be retried, in percent, 0 for no limit
+     */
+    RetryBudget(@NonNull IntSupplier percent) {
+        this.percent = percent;
+    }
+
+    /**
+     * @return the budget shared by the retry strategies of the shared client
+     */
+    @NonNull
+    static RetryBudget get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param context context of a request
+     * @return the host the request is sent to, as the circuit breaker names it
+     */
+    @NonNull
+    static String targetHost(@NonNull HttpContext context) {
+        HttpHost host = HttpClientContext.adapt(context).getTargetHost();
+        return host == null ? "" : host.toURI();
+    }
+
+    /**
+     * Records a request about to be executed, unless it is a retry: the retries go through the interceptors of the
+     * client again, with the context of the original request.
+     *
+     * @param context context of the request
+     */
+    void onRequest(@NonNull HttpContext context) {
+        if (context.getAttribute(COUNTED) == null) {
+            context.setAttribute(COUNTED, Boolean.TRUE);
+            onRequest(targetHost(context));
+        }
+    }
+
+    /**
+     * Records a request sent to a host
+     *
+     * @param host the host
+     */
+    void onRequest(@NonNull String host) {
+        HttpRetrieverMetrics.increment(HttpRetrieverMetrics.Metric.REQUESTS);
+        int share = percent.getAsInt();
+        if (share > 0) {
+            buckets.computeIfAbsent(host, h -> new Bucket()).add(share / 100.0);
+        }
+    }
+
+    /**
+     * Takes a token for a retry
+     *
+     * @param host the host
+     * @return whether the request can be retried
+     */
+    boolean tryRetry(@NonNull String host) {
+        if (percent.getAsInt() > 0 && !buckets.computeIfAbsent(host, h -> new Bucket()).take()) {
+            HttpRetrieverMetrics.increment(HttpRetrieverMetrics.Metric.RETRIES_DENIED_BY_BUDGET);
+            LOGGER.log(Level.FINE, "Retry budget of {0} exhausted, not retrying", host);
+            return false;
+        }
+        HttpRetrieverMetrics.increment(HttpRetrieverMetrics.Metric.RETRIES);
+        return true;
+    }
+
+    private static final class Bucket {
+        private double tokens = CAPACITY;
+        private long refilledAt = System.nanoTime();
+
+        synchronized void add(double count) {
+            refill();
+            tokens = Math.min(CAPACITY, tokens + count);
+        }
+
+        synchronized boolean take() {
+            refill();
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            double seconds = (now - refilledAt) / (double) TimeUnit.SECONDS.toNanos(1);
+            tokens = Math.min(CAPACITY, tokens + seconds * RESERVE_PER_SECOND);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.init.Terminator;
+import hudson.model.PeriodicWork;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide HTTP client used by every {@link HttpRetriever}.
+ * <p>
+ * Connections (and the TLS sessions negotiated on them) are pooled and reused across builds, folders and libraries
+ * instead of paying a new TCP connect and TLS handshake for each download. The pool limits come from
+ * {@link HttpRetrieverConfiguration} and are applied again each time that configuration is saved.
+ */
+@Restricted(NoExternalUse.class)
+public final class SharedHttpClient {
+
+    private static final Logger LOGGER = Logger.getLogger(SharedHttpClient.class.getName());
+
+    private static PoolingHttpClientConnectionManager connectionManager;
+    private static CloseableHttpClient client;
+
+    private SharedHttpClient() {
+    }
+
+    /**
+     * Accessor for the shared client. It must not be closed by callers, only the responses it returns.
+     *
+     * @return the shared client, created on first use
+     */
+    @NonNull
+    static synchronized CloseableHttpClient get() {
+        if (client == null) {
+            HttpRetrieverConfiguration configuration = HttpRetrieverConfiguration.get();
+            // A single SSL socket factory, hence a single SSLContext, so that TLS sessions can be resumed
+            Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                    .build();
+            connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+            applyLimits(connectionManager, configuration);
+            client = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setKeepAliveStrategy(keepAliveStrategy())
+                    .setServiceUnavailableRetryStrategy(new CustomServiceUnavailableRetryStrategy())
+                    .setRetryHandler(new CustomHttpRequestRetryHandler())
+                    .addInterceptorFirst((HttpRequestInterceptor) (request, context) ->
+                            RetryBudget.get().onRequest(context))
+                    .build();
+        }
+        return client;
+    }
+
+    /**
+     * Applies the pool limits of a freshly saved configuration. Connections already leased are left untouched.
+     *
+     * @param configuration the new configuration
+     */
+    static synchronized void reconfigure(@NonNull HttpRetrieverConfiguration configuration) {
+        if (connectionManager != null) {
+            applyLimits(connectionManager, configuration);
+        }
+    }
+
+    /**
+     * Closes the connections that stayed idle for longer than configured, and the ones the server already closed.
+     */
+    static void evictIdleConnections() {
+        PoolingHttpClientConnectionManager manager;
+        synchronized (SharedHttpClient.class) {
+            manager = connectionManager;
+        }
+        if (manager != null) {
+            manager.closeExpiredConnections();
+            manager.closeIdleConnections(HttpRetrieverConfiguration.get().getConnectionIdleTimeoutSeconds(),
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close the shared HTTP client", e);
+            }
+            client = null;
+            connectionManager = null;
+        }
+    }
+
+    private static void applyLimits(PoolingHttpClientConnectionManager manager,
+                                    HttpRetrieverConfiguration configuration) {
+        manager.setMaxTotal(configuration.getMaxConnections());
+        manager.setDefaultMaxPerRoute(Math.min(configuration.getMaxConnectionsPerHost(),
+                configuration.getMaxConnections()));
+    }
+
+    private static ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            long maxKeepAlive = TimeUnit.SECONDS.toMillis(HttpRetrieverConfiguration.get().getKeepAliveSeconds());
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            // The server did not send any Keep-Alive header: keep it for the configured duration
+            return keepAlive < 0 ? maxKeepAlive : Math.min(keepAlive, maxKeepAlive);
+        };
+    }
+
+    /**
+     * Periodically evicts the idle connections of the shared pool.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static class IdleConnectionEviction extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.SECONDS.toMillis(10);
+        }
+
+        @Override
+        protected void doRun() {
+            evictIdleConnections();
+        }
+    }
+}
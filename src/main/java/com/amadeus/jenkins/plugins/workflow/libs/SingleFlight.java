@@ -0,0 +1,105 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces concurrent executions of the same operation: the first caller for a key (the leader) runs it,
+ * the callers arriving while it runs wait for its outcome instead of running it again.
+ * <p>
+ * A failure of the leader is reported to all the waiting callers. If the leader is interrupted, typically
+ * because its build was aborted, the waiting callers are not failed: one of them becomes the new leader.
+ *
+ * @param <K> type of the keys identifying the operations
+ * @param <V> type of the results
+ */
+@Restricted(NoExternalUse.class)
+final class SingleFlight<K, V> {
+
+    /**
+     * An operation whose result can be shared
+     *
+     * @param <V> type of the result
+     */
+    @FunctionalInterface
+    interface Call<V> {
+        V call() throws Exception;
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs an operation, or waits for the same operation already running
+     *
+     * @param key    identifies the operation
+     * @param call   the operation
+     * @param onWait called when joining an operation already running
+     * @return the result of the operation
+     * @throws IOException          if the operation failed
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    V execute(@NonNull K key, @NonNull Call<V> call, @NonNull Runnable onWait)
+            throws IOException, InterruptedException {
+        while (true) {
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+            if (leader == null) {
+                return lead(key, flight, call);
+            }
+            onWait.run();
+            try {
+                return leader.get();
+            } catch (CancellationException e) {
+                // The leader was aborted: try to lead
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+    }
+
+    /**
+     * @return the number of operations currently running
+     */
+    int size() {
+        return inFlight.size();
+    }
+
+    private V lead(K key, CompletableFuture<V> flight, Call<V> call) throws IOException, InterruptedException {
+        try {
+            V result = call.call();
+            flight.complete(result);
+            return result;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+                // Aborted rather than failed: let the waiting callers retry
+                flight.cancel(false);
+            } else {
+                flight.completeExceptionally(e);
+            }
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e instanceof InterruptedException) {
+                throw (InterruptedException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new IOException(e);
+        } catch (Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+}
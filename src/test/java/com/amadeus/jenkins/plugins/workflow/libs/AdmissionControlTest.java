@@ -0,0 +1,175 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.amadeus.jenkins.plugins.workflow.libs.DownloadScheduler.Priority.BACKGROUND;
+import static com.amadeus.jenkins.plugins.workflow.libs.DownloadScheduler.Priority.BUILD;
+import static com.amadeus.jenkins.plugins.workflow.libs.DownloadScheduler.Priority.VALIDATION;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControlTest {
+    private static final String HOST = "https://repository.example.com";
+
+    @Test
+    public void testLimitsConcurrentDownloads() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 2, () -> false);
+        AdmissionControl.Permit first = admissionControl.acquire(HOST, BUILD, 0);
+        AdmissionControl.Permit second = admissionControl.acquire(HOST, BUILD, 0);
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(admissionControl.acquire(HOST, BUILD, 50));
+        // The other hosts are not affected
+        assertNotNull(admissionControl.acquire("https://mirror.example.com", BUILD, 0));
+        first.close();
+        // Closing twice does not let two downloads in
+        first.close();
+        assertNotNull(admissionControl.acquire(HOST, BUILD, 0));
+        assertNull(admissionControl.acquire(HOST, BUILD, 50));
+    }
+
+    @Test
+    public void testAdmitsInOrderOfArrival() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 1, () -> false);
+        AdmissionControl.Permit running = admissionControl.acquire(HOST, BUILD, 0);
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (String name : List.of("first", "second", "third")) {
+            Thread thread = new Thread(() -> {
+                try (AdmissionControl.Permit permit = admissionControl.acquire(HOST, BUILD, 10000)) {
+                    assertNotNull(permit);
+                    assertTrue(permit.getWaitedMillis() > 0);
+                    admitted.add(name);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            // Queued one after the other
+            Thread.sleep(50);
+        }
+        running.close();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        assertEquals(List.of("first", "second", "third"), admitted);
+    }
+
+    @Test
+    public void testAdmitsBuildsBeforeBackgroundDownloads() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 1, () -> false);
+        AdmissionControl.Permit running = admissionControl.acquire(HOST, BUILD, 0);
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (DownloadScheduler.Priority priority : List.of(BACKGROUND, VALIDATION, BUILD)) {
+            Thread thread = new Thread(() -> {
+                try (AdmissionControl.Permit permit = admissionControl.acquire(HOST, priority, 10000)) {
+                    assertNotNull(permit);
+                    admitted.add(priority.name());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            Thread.sleep(50);
+        }
+        running.close();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        assertEquals(List.of("BUILD", "VALIDATION", "BACKGROUND"), admitted);
+    }
+
+    @Test
+    public void testLimitsBackgroundDownloadsToHalf() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 4, () -> false);
+        assertNotNull(admissionControl.acquire(HOST, BACKGROUND, 0));
+        assertNotNull(admissionControl.acquire(HOST, BACKGROUND, 0));
+        assertNull(admissionControl.acquire(HOST, BACKGROUND, 50));
+        // The builds still find room
+        assertNotNull(admissionControl.acquire(HOST, BUILD, 0));
+        assertNotNull(admissionControl.acquire(HOST, BUILD, 0));
+        assertNull(admissionControl.acquire(HOST, BUILD, 50));
+    }
+
+    @Test
+    public void testRaisedBackgroundDownloadUsesWholeLimit() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 2, () -> false);
+        assertNotNull(admissionControl.acquire(HOST, BACKGROUND, 0));
+        AtomicReference<DownloadScheduler.Priority> priority = new AtomicReference<>(BACKGROUND);
+        AtomicReference<AdmissionControl.Permit> admitted = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                admitted.set(admissionControl.acquire(HOST, priority::get, 10000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        Thread.sleep(100);
+        assertNull(admitted.get());
+
+        priority.set(BUILD);
+        admissionControl.onPriorityRaised();
+        thread.join(10000);
+
+        assertNotNull(admitted.get());
+    }
+
+    @Test
+    public void testDoesNotLimitWithoutMaximum() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 0, () -> true);
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(admissionControl.acquire(HOST, BUILD, 0));
+        }
+        assertEquals(0, admissionControl.getLimit(HOST));
+    }
+
+    @Test
+    public void testHalvesLimitOnFailureAndGrowsItBack() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 8, () -> true);
+        try (AdmissionControl.Permit permit = admissionControl.acquire(HOST, BUILD, 0)) {
+            permit.report(false, 10);
+            // A burst of failures halves the limit only once
+            permit.report(false, 10);
+            assertEquals(4, admissionControl.getLimit(HOST));
+            for (int i = 0; i < 30; i++) {
+                permit.report(true, 10);
+            }
+        }
+
+        assertEquals(8, admissionControl.getLimit(HOST));
+    }
+
+    @Test
+    public void testHalvesLimitWhenHostSlowsDown() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 8, () -> true);
+        try (AdmissionControl.Permit permit = admissionControl.acquire(HOST, BUILD, 0)) {
+            permit.report(true, 10);
+            permit.report(true, 15);
+            assertEquals(8, admissionControl.getLimit(HOST));
+            permit.report(true, 100);
+        }
+
+        assertEquals(4, admissionControl.getLimit(HOST));
+    }
+
+    @Test
+    public void testKeepsConfiguredLimitWhenNotAdaptive() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 8, () -> false);
+        try (AdmissionControl.Permit permit = admissionControl.acquire(HOST, BUILD, 0)) {
+            permit.report(false, 10);
+        }
+
+        assertEquals(8, admissionControl.getLimit(HOST));
+    }
+}
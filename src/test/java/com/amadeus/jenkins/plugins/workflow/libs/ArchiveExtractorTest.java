@@ -0,0 +1,385 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchiveExtractorTest {
+
+    @TempDir
+    Path destination;
+
+    @Test
+    public void testExtract() throws IOException {
+        ArchiveExtractor.extract(zip("vars/", null, "vars/hello.groovy", "def call() {}", "version.txt", "1.2.3"),
+                destination);
+
+        assertTrue(Files.isDirectory(destination.resolve("vars")));
+        assertEquals("def call() {}", Files.readString(destination.resolve("vars/hello.groovy")));
+        assertEquals("1.2.3", Files.readString(destination.resolve("version.txt")));
+    }
+
+    @Test
+    public void testExtractCreatesMissingParentDirectories() throws IOException {
+        ArchiveExtractor.extract(zip("src/org/example/Lib.groovy", "class Lib {}"), destination);
+
+        assertEquals("class Lib {}", Files.readString(destination.resolve("src/org/example/Lib.groovy")));
+    }
+
+    @Test
+    public void testExtractFileStripsWrappingDirectory() throws IOException {
+        Path archive = zipFile("lib-0a1b2c/", null, "lib-0a1b2c/vars/hello.groovy", "def call() {}",
+                "lib-0a1b2c/version.txt", "1.2.3");
+        ArchiveExtractor.extract(archive, destination.resolve("lib"));
+
+        assertEquals("def call() {}", Files.readString(destination.resolve("lib/vars/hello.groovy")));
+        assertEquals("1.2.3", Files.readString(destination.resolve("lib/version.txt")));
+        assertFalse(Files.exists(destination.resolve("lib/lib-0a1b2c")));
+    }
+
+    @Test
+    public void testExtractFileKeepsLibraryDirectory() throws IOException {
+        Path archive = zipFile("vars/hello.groovy", "def call() {}");
+        ArchiveExtractor.extract(archive, destination.resolve("lib"));
+
+        assertEquals("def call() {}", Files.readString(destination.resolve("lib/vars/hello.groovy")));
+    }
+
+    @Test
+    public void testExtractFileRejectsEntryInParentDirectoryBeforeWritingAnything() throws IOException {
+        Path archive = zipFile("version.txt", "1.2.3", "../outside.txt", "hack");
+
+        assertThrows(IOException.class, () -> ArchiveExtractor.extract(archive, destination.resolve("lib")));
+        assertFalse(Files.exists(destination.resolve("lib/version.txt")));
+        assertFalse(Files.exists(destination.resolve("outside.txt")));
+    }
+
+    @Test
+    public void testExtractFileWithStoredEntries() throws IOException {
+        Path archive = Files.createTempFile(destination, "archive", ".zip");
+        byte[] content = "def call() {}".getBytes(StandardCharsets.UTF_8);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            ZipEntry entry = new ZipEntry("vars/hello.groovy");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(content);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("version.txt"));
+            out.write("1.2.3".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        ArchiveExtractor.extract(archive, destination.resolve("lib"));
+
+        assertEquals("def call() {}", Files.readString(destination.resolve("lib/vars/hello.groovy")));
+        assertEquals("1.2.3", Files.readString(destination.resolve("lib/version.txt")));
+    }
+
+    @Test
+    public void testExtractFileInParallel() throws IOException {
+        String[] namesAndContents = new String[400];
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            namesAndContents[i] = "lib-0a1b2c/resources/" + (i % 7) + "/file-" + i + ".txt";
+            namesAndContents[i + 1] = "content " + i;
+        }
+        Path archive = zipFile(namesAndContents);
+        ArchiveExtractor.extract(archive, destination.resolve("lib"), 4);
+
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            assertEquals("content " + i, Files.readString(destination.resolve("lib/resources/" + (i % 7) + "/file-" + i + ".txt")));
+        }
+    }
+
+    @Test
+    public void testExtractFileInParallelReportsFailures() throws IOException {
+        Path archive = zipFile("vars/a.groovy", "a", "vars/b.groovy", "b", "resources/c", "c");
+        Files.createDirectories(destination.resolve("lib/resources/c/not-empty"));
+
+        assertThrows(IOException.class, () -> ArchiveExtractor.extract(archive, destination.resolve("lib"), 4));
+    }
+
+    @Test
+    public void testExtractFileInParallelStopsWhenInterrupted() throws Exception {
+        String[] namesAndContents = new String[8000];
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            namesAndContents[i] = "resources/file-" + i + ".txt";
+            namesAndContents[i + 1] = "content " + i;
+        }
+        Path archive = zipFile(namesAndContents);
+        Path resources = destination.resolve("lib/resources");
+        Thread extracting = Thread.currentThread();
+        Thread interrupting = new Thread(() -> {
+            // Once the files are being extracted by the workers
+            while (!Files.exists(resources.resolve("file-0.txt"))) {
+                Thread.onSpinWait();
+            }
+            extracting.interrupt();
+        });
+        interrupting.start();
+        try {
+            assertThrows(InterruptedIOException.class,
+                    () -> ArchiveExtractor.extract(archive, destination.resolve("lib"), 4));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            interrupting.join();
+            Thread.interrupted();
+        }
+        long extracted;
+        try (Stream<Path> files = Files.list(resources)) {
+            extracted = files.count();
+        }
+        assertTrue(extracted < namesAndContents.length / 2, extracted + " files extracted");
+        Thread.sleep(100);
+        try (Stream<Path> files = Files.list(resources)) {
+            assertEquals(extracted, files.count());
+        }
+    }
+
+    @Test
+    public void testWrappingDirectory() {
+        assertEquals("repo-sha/", ArchiveExtractor.wrappingDirectory(List.of("repo-sha/", "repo-sha/vars/a.groovy")));
+        assertEquals("repo-sha/", ArchiveExtractor.wrappingDirectory(List.of("repo-sha/vars/a.groovy", "repo-sha/b")));
+        assertEquals("", ArchiveExtractor.wrappingDirectory(List.of("repo-sha/vars/a.groovy", "version.txt")));
+        assertEquals("", ArchiveExtractor.wrappingDirectory(List.of("a/vars/a.groovy", "b/vars/b.groovy")));
+        assertEquals("", ArchiveExtractor.wrappingDirectory(List.of("src/", "src/org/Lib.groovy")));
+        assertEquals("", ArchiveExtractor.wrappingDirectory(List.of("vars/a.groovy")));
+        assertEquals("", ArchiveExtractor.wrappingDirectory(List.of("empty/")));
+        assertEquals("", ArchiveExtractor.wrappingDirectory(List.of()));
+    }
+
+    @Test
+    public void testExtractWhileReadingThenSetUnixModes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(bytes)) {
+            addEntry(out, "resources/large.txt", 0100644, "x".repeat(100_000));
+            addEntry(out, "resources/run.sh", 0100755, "#!/bin/sh");
+            addEntry(out, "vars/hello.groovy", 0100644, "def call() {}");
+        }
+        Path archive = Files.write(Files.createTempFile(destination, "archive", ".zip"), bytes.toByteArray());
+
+        ArchiveExtractor.extract(new ByteArrayInputStream(bytes.toByteArray()), destination);
+        ArchiveExtractor.setUnixModes(archive, destination);
+
+        assertTrue(Files.isExecutable(destination.resolve("resources/run.sh")));
+        assertFalse(Files.isExecutable(destination.resolve("vars/hello.groovy")));
+        assertEquals("def call() {}", Files.readString(destination.resolve("vars/hello.groovy")));
+    }
+
+    @Test
+    public void testExtractWhileReadingStoredEntriesWithDataDescriptor() throws IOException {
+        byte[] bytes = storedZipWithDataDescriptors(new String[] {"resources/run.sh", "vars/hello.groovy"},
+                new int[] {0100755, 0100644}, new String[] {"#!/bin/sh", "def call() {}"});
+        Path archive = Files.write(Files.createTempFile(destination, "archive", ".zip"), bytes);
+
+        ArchiveExtractor.extract(new ByteArrayInputStream(bytes), destination);
+        assertEquals("#!/bin/sh", Files.readString(destination.resolve("resources/run.sh")));
+        assertEquals("def call() {}", Files.readString(destination.resolve("vars/hello.groovy")));
+        assertFalse(Files.isExecutable(destination.resolve("resources/run.sh")));
+
+        ArchiveExtractor.setUnixModes(archive, destination);
+        assertTrue(Files.isExecutable(destination.resolve("resources/run.sh")));
+        assertFalse(Files.isExecutable(destination.resolve("vars/hello.groovy")));
+    }
+
+    @Test
+    public void testRejectsEntryInParentDirectory() throws IOException {
+        InputStream zip = zip("version.txt", "1.2.3", "../outside.txt", "hack");
+
+        assertThrows(IOException.class, () -> ArchiveExtractor.extract(zip, destination.resolve("lib")));
+        assertFalse(Files.exists(destination.resolve("outside.txt")));
+    }
+
+    @Test
+    public void testRejectsAbsoluteEntry() throws IOException {
+        Path outside = destination.resolve("outside.txt").toAbsolutePath();
+        InputStream zip = zip(outside.toString(), "hack");
+
+        assertThrows(IOException.class, () -> ArchiveExtractor.extract(zip, destination.resolve("lib")));
+        assertFalse(Files.exists(outside));
+    }
+
+    @Test
+    public void testExtractTarGzFileStripsWrappingDirectory() throws IOException {
+        Path archive = tarFile(ArchiveFormat.TAR_GZ, "lib-0a1b2c/", null, "lib-0a1b2c/vars/hello.groovy", "def call() {}",
+                "lib-0a1b2c/version.txt", "1.2.3");
+        ArchiveExtractor.extract(archive, destination.resolve("lib"));
+
+        assertEquals("def call() {}", Files.readString(destination.resolve("lib/vars/hello.groovy")));
+        assertEquals("1.2.3", Files.readString(destination.resolve("lib/version.txt")));
+        assertFalse(Files.exists(destination.resolve("lib/lib-0a1b2c")));
+    }
+
+    @Test
+    public void testExtractTarZstdFile() throws IOException {
+        Path archive = tarFile(ArchiveFormat.TAR_ZSTD, "vars/hello.groovy", "def call() {}", "version.txt", "1.2.3");
+        ArchiveExtractor.extract(archive, destination.resolve("lib"));
+
+        assertEquals("def call() {}", Files.readString(destination.resolve("lib/vars/hello.groovy")));
+        assertEquals("1.2.3", Files.readString(destination.resolve("lib/version.txt")));
+    }
+
+    @Test
+    public void testExtractTarGzWhileReading() throws IOException {
+        InputStream archive = new ByteArrayInputStream(tar(ArchiveFormat.TAR_GZ, "src/org/example/Lib.groovy", "class Lib {}"));
+        ArchiveExtractor.extract(archive, ArchiveFormat.TAR_GZ, destination);
+
+        assertEquals("class Lib {}", Files.readString(destination.resolve("src/org/example/Lib.groovy")));
+    }
+
+    @Test
+    public void testExtractTarSkipsLinks() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes))) {
+            TarArchiveEntry link = new TarArchiveEntry("vars/passwd", TarConstants.LF_SYMLINK);
+            link.setLinkName("/etc/passwd");
+            out.putArchiveEntry(link);
+            out.closeArchiveEntry();
+        }
+        ArchiveExtractor.extract(new ByteArrayInputStream(bytes.toByteArray()), ArchiveFormat.TAR_GZ, destination);
+
+        assertFalse(Files.exists(destination.resolve("vars/passwd"), LinkOption.NOFOLLOW_LINKS));
+    }
+
+    @Test
+    public void testExtractTarFileRejectsEntryInParentDirectoryBeforeWritingAnything() throws IOException {
+        Path archive = tarFile(ArchiveFormat.TAR_GZ, "version.txt", "1.2.3", "../outside.txt", "hack");
+
+        assertThrows(IOException.class, () -> ArchiveExtractor.extract(archive, destination.resolve("lib")));
+        assertFalse(Files.exists(destination.resolve("lib/version.txt")));
+        assertFalse(Files.exists(destination.resolve("outside.txt")));
+    }
+
+    @Test
+    public void testExtractTarRejectsAbsoluteEntry() throws IOException {
+        Path outside = destination.resolve("outside.txt").toAbsolutePath();
+        InputStream archive = new ByteArrayInputStream(tar(ArchiveFormat.TAR_GZ, outside.toString(), "hack"));
+
+        assertThrows(IOException.class, () -> ArchiveExtractor.extract(archive, ArchiveFormat.TAR_GZ, destination.resolve("lib")));
+        assertFalse(Files.exists(outside));
+    }
+
+    private Path tarFile(ArchiveFormat format, String... namesAndContents) throws IOException {
+        Path archive = Files.createTempFile(destination, "archive", ".tar");
+        Files.write(archive, tar(format, namesAndContents));
+        return archive;
+    }
+
+    /**
+     * @param namesAndContents entry names, each followed by its content or null for a directory
+     */
+    private static byte[] tar(ArchiveFormat format, String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream compressed = format == ArchiveFormat.TAR_ZSTD
+                ? new ZstdOutputStream(bytes) : new GzipCompressorOutputStream(bytes);
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(compressed)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                TarArchiveEntry entry = new TarArchiveEntry(namesAndContents[i], true);
+                byte[] content = namesAndContents[i + 1] == null
+                        ? new byte[0] : namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8);
+                entry.setSize(content.length);
+                out.putArchiveEntry(entry);
+                out.write(content);
+                out.closeArchiveEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void addEntry(ZipArchiveOutputStream out, String name, int unixMode, String content)
+            throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setUnixMode(unixMode);
+        out.putArchiveEntry(entry);
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.closeArchiveEntry();
+    }
+
+    /**
+     * A zip archive of stored entries as some streaming writers produce them: their size and CRC, unknown when their
+     * local header is written, are in a data descriptor after their content
+     */
+    private static byte[] storedZipWithDataDescriptors(String[] names, int[] unixModes, String[] contents) {
+        ByteBuffer zip = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer directory = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < names.length; i++) {
+            byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+            byte[] content = contents[i].getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            int offset = zip.position();
+            // Local header: version, flags (data descriptor), method (stored), time and date, then no CRC nor sizes
+            zip.putInt(0x04034b50).putShort((short) 10).putShort((short) 8).putShort((short) 0).putInt(0)
+                    .putInt(0).putInt(0).putInt(0).putShort((short) name.length).putShort((short) 0).put(name)
+                    .put(content)
+                    .putInt(0x08074b50).putInt((int) crc.getValue()).putInt(content.length).putInt(content.length);
+            // Central directory header: made on Unix, then as the local header with the CRC and sizes, no extra
+            // field nor comment, and the mode in the external attributes
+            directory.putInt(0x02014b50).putShort((short) (3 << 8 | 20)).putShort((short) 10).putShort((short) 8)
+                    .putShort((short) 0).putInt(0).putInt((int) crc.getValue()).putInt(content.length)
+                    .putInt(content.length).putShort((short) name.length).putInt(0).putInt(0)
+                    .putInt(unixModes[i] << 16).putInt(offset).put(name);
+        }
+        int directoryOffset = zip.position();
+        directory.flip();
+        int directorySize = directory.remaining();
+        zip.put(directory).putInt(0x06054b50).putInt(0).putShort((short) names.length)
+                .putShort((short) names.length).putInt(directorySize).putInt(directoryOffset).putShort((short) 0);
+        return Arrays.copyOf(zip.array(), zip.position());
+    }
+
+    private Path zipFile(String... namesAndContents) throws IOException {
+        Path archive = Files.createTempFile(destination, "archive", ".zip");
+        try (InputStream zip = zip(namesAndContents)) {
+            Files.copy(zip, archive, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return archive;
+    }
+
+    /**
+     * @param namesAndContents entry names, each followed by its content or null for a directory
+     */
+    private static InputStream zip(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                if (namesAndContents[i + 1] != null) {
+                    out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                }
+                out.closeEntry();
+            }
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,51 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchiveFormatTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testOfContentType() {
+        assertEquals(ArchiveFormat.ZIP, ArchiveFormat.of("application/zip", "lib.tar.gz"));
+        assertEquals(ArchiveFormat.TAR_GZ, ArchiveFormat.of("application/gzip", null));
+        assertEquals(ArchiveFormat.TAR_GZ, ArchiveFormat.of("Application/X-GZIP; charset=binary", "lib"));
+        assertEquals(ArchiveFormat.TAR_ZSTD, ArchiveFormat.of("application/zstd", "lib.zip"));
+    }
+
+    @Test
+    public void testOfFileName() {
+        assertEquals(ArchiveFormat.ZIP, ArchiveFormat.of("application/octet-stream", "lib.zip"));
+        assertEquals(ArchiveFormat.TAR_GZ, ArchiveFormat.of("application/octet-stream", "lib-1.0.tar.gz"));
+        assertEquals(ArchiveFormat.TAR_GZ, ArchiveFormat.of(null, "LIB.TGZ"));
+        assertEquals(ArchiveFormat.TAR_ZSTD, ArchiveFormat.of(null, "lib-1.0.tar.zst"));
+        assertEquals(ArchiveFormat.TAR_ZSTD, ArchiveFormat.of(null, "lib.tzst"));
+    }
+
+    @Test
+    public void testDefaultsToZip() {
+        assertEquals(ArchiveFormat.ZIP, ArchiveFormat.of(null, null));
+        assertEquals(ArchiveFormat.ZIP, ArchiveFormat.of("application/octet-stream", "master"));
+    }
+
+    @Test
+    public void testOfFile() throws IOException {
+        assertEquals(ArchiveFormat.ZIP, ArchiveFormat.of(file(new byte[] {'P', 'K', 3, 4, 0})));
+        assertEquals(ArchiveFormat.TAR_GZ, ArchiveFormat.of(file(new byte[] {(byte) 0x1f, (byte) 0x8b, 8})));
+        assertEquals(ArchiveFormat.TAR_ZSTD, ArchiveFormat.of(file(new byte[] {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd})));
+        assertEquals(ArchiveFormat.ZIP, ArchiveFormat.of(file(new byte[] {1})));
+    }
+
+    private Path file(byte[] content) throws IOException {
+        return Files.write(Files.createTempFile(directory, "archive", null), content);
+    }
+}
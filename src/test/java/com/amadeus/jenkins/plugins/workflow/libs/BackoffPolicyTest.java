@@ -0,0 +1,92 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BackoffPolicyTest {
+
+    @Test
+    public void testDelaysStayBelowExponentialBound() {
+        BackoffPolicy policy = new BackoffPolicy(10, 100, 1000, 0);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.jitteredDelay(1) <= 100);
+            assertTrue(policy.jitteredDelay(3) <= 400);
+            assertTrue(policy.jitteredDelay(10) <= 1000);
+            assertTrue(policy.jitteredDelay(100) <= 1000);
+        }
+    }
+
+    @Test
+    public void testDelaysAreSpread() {
+        BackoffPolicy policy = new BackoffPolicy(2, 3000, 30000, 0);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.jitteredDelay(1);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue(min < 1000, "min " + min);
+        assertTrue(max > 2000, "max " + max);
+    }
+
+    @Test
+    public void testNoRetryPastMaxRetries() {
+        BackoffPolicy policy = new BackoffPolicy(2, 0, 0, 0);
+        HttpContext context = new BasicHttpContext();
+
+        assertEquals(0, policy.nextDelay(2, -1, context));
+        assertEquals(-1, policy.nextDelay(3, -1, context));
+    }
+
+    @Test
+    public void testRetryAfterIsFollowedUpToMaxDelay() {
+        BackoffPolicy policy = new BackoffPolicy(2, 100, 5000, 0);
+        HttpContext context = new BasicHttpContext();
+
+        assertEquals(4000, policy.nextDelay(1, 4000, context));
+        assertEquals(-1, policy.nextDelay(1, 6000, context));
+    }
+
+    @Test
+    public void testNoRetryPastDeadline() {
+        BackoffPolicy policy = new BackoffPolicy(5, 100, 5000, 2000);
+        HttpContext context = new BasicHttpContext();
+
+        assertEquals(1500, policy.nextDelay(1, 1500, context));
+        // Counted from the first failure of the request
+        assertEquals(-1, policy.nextDelay(2, 2500, context));
+        assertEquals(-1, policy.nextDelay(1, 2500, new BasicHttpContext()));
+    }
+
+    @Test
+    public void testNoRetryPastDownloadDeadline() throws Exception {
+        BackoffPolicy policy = new BackoffPolicy(5, 100, 5000, 0);
+        HttpClientContext context = HttpClientContext.create();
+        new DownloadWatchdog(1000, 1000, 0, 1000, 2000).attachTo(context);
+
+        assertEquals(1500, policy.nextDelay(1, 1500, context));
+        assertEquals(-1, policy.nextDelay(2, 2500, context));
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        long now = System.currentTimeMillis();
+
+        assertEquals(120000, BackoffPolicy.parseRetryAfter("120", now));
+        assertEquals(0, BackoffPolicy.parseRetryAfter("-5", now));
+        assertEquals(-1, BackoffPolicy.parseRetryAfter(null, now));
+        assertEquals(-1, BackoffPolicy.parseRetryAfter("soon", now));
+        long delay = BackoffPolicy.parseRetryAfter(DateUtils.formatDate(new Date(now + 60000)), now);
+        // HTTP dates have a precision of a second
+        assertTrue(delay > 58000 && delay <= 60000, "delay " + delay);
+        assertEquals(0, BackoffPolicy.parseRetryAfter(DateUtils.formatDate(new Date(now - 60000)), now));
+    }
+}
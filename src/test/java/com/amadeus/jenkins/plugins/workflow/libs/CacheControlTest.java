@@ -0,0 +1,57 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheControlTest {
+    private static final long NOW = 1_000_000_000L;
+
+    @Test
+    public void testNoHeader() {
+        assertSame(CacheControl.NONE, CacheControl.parse(null));
+        assertSame(CacheControl.NONE, CacheControl.parse(""));
+        assertFalse(CacheControl.NONE.isFresh(NOW, NOW));
+    }
+
+    @Test
+    public void testMaxAge() {
+        CacheControl cacheControl = CacheControl.parse("public, max-age=60");
+        assertEquals(60, cacheControl.getMaxAgeSeconds());
+        assertTrue(cacheControl.isFresh(NOW, NOW + 59_000));
+        assertFalse(cacheControl.isFresh(NOW, NOW + 60_000));
+    }
+
+    @Test
+    public void testImmutableKeepsMaxAge() {
+        CacheControl cacheControl = CacheControl.parse("max-age=31536000, immutable");
+        assertEquals(31536000, cacheControl.getMaxAgeSeconds());
+        assertTrue(cacheControl.isFresh(0, NOW));
+        assertFalse(cacheControl.isFresh(0, 31_536_000_000L));
+    }
+
+    @Test
+    public void testImmutableWithoutMaxAgeIsNotFresh() {
+        CacheControl cacheControl = CacheControl.parse("immutable");
+        assertEquals(-1, cacheControl.getMaxAgeSeconds());
+        assertFalse(cacheControl.isFresh(NOW, NOW));
+    }
+
+    @Test
+    public void testImmutableWithZeroMaxAgeIsNotFresh() {
+        CacheControl cacheControl = CacheControl.parse("max-age=0, immutable");
+        assertFalse(cacheControl.isFresh(NOW, NOW));
+    }
+
+    @Test
+    public void testNoCacheWins() {
+        CacheControl cacheControl = CacheControl.parse("max-age=60, no-cache");
+        assertEquals(0, cacheControl.getMaxAgeSeconds());
+        assertFalse(cacheControl.isFresh(NOW, NOW));
+    }
+
+    @Test
+    public void testInvalidMaxAge() {
+        assertEquals(-1, CacheControl.parse("max-age=soon").getMaxAgeSeconds());
+    }
+}
@@ -0,0 +1,188 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheIndexTest {
+
+    @TempDir
+    Path root;
+
+    private CacheIndex index;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        index = CacheIndex.open(root);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Test
+    public void testCreated() throws IOException {
+        assertTrue(index.isCreated());
+        assertTrue(index.entries().isEmpty());
+
+        reopen();
+        assertFalse(index.isCreated());
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        index.put(archive("a", "\"etag-a\"", null), 10, 1000);
+        index.put(archive("b", null, "digest-b"), 20, 2000);
+        index.accessed("a", 3000);
+        index.putTree("digest-b", 30);
+
+        reopen();
+        CacheIndex.Entry a = index.get("a");
+        assertNotNull(a);
+        assertEquals("\"etag-a\"", a.getArchive().getEtag());
+        assertNull(a.getArchive().getDigest());
+        assertEquals(root.resolve("a").resolve("file.archive"), a.getArchive().getArchive());
+        assertEquals(60, a.getArchive().getCacheControl().getMaxAgeSeconds());
+        assertEquals(10, a.getSize());
+        assertEquals(3000, a.getLastAccess());
+        CacheIndex.Entry b = index.get("b");
+        assertNotNull(b);
+        assertEquals("digest-b", b.getArchive().getDigest());
+        assertEquals(2000, b.getLastAccess());
+        assertEquals(Long.valueOf(30), index.getTreeSize("digest-b"));
+    }
+
+    @Test
+    public void testAccessesAreWrittenOnFlush() throws IOException {
+        index.put(archive("a", null, null), 10, 1000);
+        long length = Files.size(root.resolve(CacheIndex.FILE_NAME));
+
+        index.accessed("a", 2000);
+        index.accessed("a", 3000);
+        assertEquals(3000, index.get("a").getLastAccess());
+        assertEquals(length, Files.size(root.resolve(CacheIndex.FILE_NAME)));
+
+        index.flushAccesses();
+        long flushed = Files.size(root.resolve(CacheIndex.FILE_NAME));
+        assertTrue(flushed > length);
+        index.flushAccesses();
+        assertEquals(flushed, Files.size(root.resolve(CacheIndex.FILE_NAME)));
+
+        reopen();
+        assertEquals(3000, index.get("a").getLastAccess());
+    }
+
+    @Test
+    public void testReplayRemovals() throws IOException {
+        index.put(archive("a", null, null), 10, 1000);
+        index.putTree("digest", 30);
+        index.remove("a");
+        index.removeTree("digest");
+
+        reopen();
+        assertNull(index.get("a"));
+        assertNull(index.getTreeSize("digest"));
+    }
+
+    @Test
+    public void testIncompleteRecordIsIgnored() throws IOException {
+        index.put(archive("a", null, null), 10, 1000);
+        long length = Files.size(root.resolve(CacheIndex.FILE_NAME));
+        index.put(archive("b", null, null), 20, 2000);
+        index.close();
+        try (FileChannel channel = FileChannel.open(root.resolve(CacheIndex.FILE_NAME), StandardOpenOption.WRITE)) {
+            channel.truncate(length + 10);
+        }
+
+        index = CacheIndex.open(root);
+        assertNotNull(index.get("a"));
+        assertNull(index.get("b"));
+
+        index.put(archive("c", null, null), 30, 3000);
+        reopen();
+        assertNotNull(index.get("a"));
+        assertNotNull(index.get("c"));
+    }
+
+    @Test
+    public void testCorruptRecordIsIgnored() throws IOException {
+        index.put(archive("a", null, null), 10, 1000);
+        index.put(archive("b", null, null), 20, 2000);
+        index.close();
+        byte[] content = Files.readAllBytes(root.resolve(CacheIndex.FILE_NAME));
+        content[content.length - 1] ^= 1;
+        Files.write(root.resolve(CacheIndex.FILE_NAME), content);
+
+        index = CacheIndex.open(root);
+        assertNotNull(index.get("a"));
+        assertNull(index.get("b"));
+    }
+
+    @Test
+    public void testCorruptTailIsCutBeforeAppending() throws IOException {
+        index.put(archive("a", null, null), 10, 1000);
+        long length = Files.size(root.resolve(CacheIndex.FILE_NAME));
+        index.put(archive("long-key-of-a-record-longer-than-the-next-one", "\"etag\"", "digest"), 20, 2000);
+        index.close();
+        byte[] content = Files.readAllBytes(root.resolve(CacheIndex.FILE_NAME));
+        content[content.length - 1] ^= 1;
+        Files.write(root.resolve(CacheIndex.FILE_NAME), content);
+
+        index = CacheIndex.open(root);
+        assertEquals(length, Files.size(root.resolve(CacheIndex.FILE_NAME)));
+        index.accessed("a", 3000);
+        reopen();
+        assertEquals(3000, index.get("a").getLastAccess());
+        assertEquals(1, index.entries().size());
+    }
+
+    @Test
+    public void testNotAnIndex() throws IOException {
+        index.close();
+        Files.writeString(root.resolve(CacheIndex.FILE_NAME), "not an index");
+
+        assertThrows(IOException.class, () -> CacheIndex.open(root));
+        index = CacheIndex.open(Files.createDirectories(root.resolve("other")));
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            index.put(archive("a", null, null), i, i);
+            index.accessed("a", i);
+        }
+        index.put(archive("b", null, null), 20, 2000);
+        index.putTree("digest", 30);
+        long length = Files.size(root.resolve(CacheIndex.FILE_NAME));
+
+        index.compact();
+        assertTrue(Files.size(root.resolve(CacheIndex.FILE_NAME)) < length);
+        index.accessed("b", 3000);
+
+        reopen();
+        assertEquals(99, index.get("a").getLastAccess());
+        assertEquals(3000, index.get("b").getLastAccess());
+        assertEquals(Long.valueOf(30), index.getTreeSize("digest"));
+        assertEquals(2, index.entries().size());
+    }
+
+    private void reopen() throws IOException {
+        index.close();
+        index = CacheIndex.open(root);
+    }
+
+    private CachedArchive archive(String key, String etag, String digest) {
+        return new CachedArchive(key, "https://example.org/" + key + ".zip", root.resolve(key).resolve("file.archive"),
+                etag, null, digest, CacheControl.parse("max-age=60"), 0);
+    }
+}
@@ -0,0 +1,94 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+    private static final String HOST = "https://repository.example.com";
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(() -> 3, () -> 60000);
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.acquire(HOST);
+            circuitBreaker.onFailure(HOST);
+        }
+        circuitBreaker.acquire(HOST);
+        circuitBreaker.onSuccess(HOST);
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.acquire(HOST);
+            circuitBreaker.onFailure(HOST);
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+        assertThrows(CircuitBreaker.OpenCircuitException.class, () -> circuitBreaker.acquire(HOST));
+        // The other hosts are not affected
+        circuitBreaker.acquire("https://mirror.example.com");
+    }
+
+    @Test
+    public void testSingleProbeClosesCircuit() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(() -> 1, () -> 50);
+        circuitBreaker.onFailure(HOST);
+        Thread.sleep(100);
+
+        circuitBreaker.acquire(HOST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(HOST));
+        assertThrows(CircuitBreaker.OpenCircuitException.class, () -> circuitBreaker.acquire(HOST));
+        circuitBreaker.onSuccess(HOST);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+        circuitBreaker.acquire(HOST);
+    }
+
+    @Test
+    public void testFailedProbeOpensCircuitAgain() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(() -> 1, () -> 50);
+        circuitBreaker.onFailure(HOST);
+        Thread.sleep(100);
+
+        circuitBreaker.acquire(HOST);
+        circuitBreaker.onFailure(HOST);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+        assertThrows(CircuitBreaker.OpenCircuitException.class, () -> circuitBreaker.acquire(HOST));
+    }
+
+    @Test
+    public void testAbandonedRequestsAreNotFailures() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(() -> 2, () -> 50);
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.acquire(HOST);
+            circuitBreaker.onAbandoned(HOST);
+        }
+        circuitBreaker.acquire(HOST);
+        circuitBreaker.onFailure(HOST);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+    }
+
+    @Test
+    public void testAbandonedProbeLetsNextRequestProbe() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(() -> 1, () -> 50);
+        circuitBreaker.onFailure(HOST);
+        Thread.sleep(100);
+
+        circuitBreaker.acquire(HOST);
+        circuitBreaker.onAbandoned(HOST);
+
+        circuitBreaker.acquire(HOST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(HOST));
+    }
+
+    @Test
+    public void testNeverOpensWhenDisabled() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(() -> 0, () -> 60000);
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.acquire(HOST);
+            circuitBreaker.onFailure(HOST);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+    }
+}
@@ -31,6 +31,42 @@ public class ConfigurationAsCodeTest {
     HttpRetriever httpRetriever = (HttpRetriever) retriever;
     assertThat(httpRetriever.getHttpURL()).isEqualTo("http://example.org/123");
     assertThat(httpRetriever.getCredentialsId()).isEqualTo("someCredentials");
+    assertThat(httpRetriever.getMirrorURLs()).isEqualTo("http://mirror1.example.org/123\nhttp://mirror2.example.org/123");
+  }
+
+  @Test
+  public void testRetrieverConfigurationAsCode() throws Exception {
+    ConfigurationAsCode.get().configureWith(new YamlSource<>(ClassLoader.getSystemResourceAsStream("retrieverConfiguration.yaml")));
+    HttpRetrieverConfiguration configuration = HttpRetrieverConfiguration.get();
+    assertThat(configuration.getMaxConnections()).isEqualTo(100);
+    assertThat(configuration.getMaxConnectionsPerHost()).isEqualTo(30);
+    assertThat(configuration.getConnectionIdleTimeoutSeconds()).isEqualTo(15);
+    assertThat(configuration.getKeepAliveSeconds()).isEqualTo(120);
+    assertThat(configuration.getMaxDownloadsPerHost()).isEqualTo(4);
+    assertThat(configuration.isAdaptiveDownloadLimit()).isTrue();
+    assertThat(configuration.getBackgroundDownloadThreads()).isEqualTo(3);
+    assertThat(configuration.isCacheWarmup()).isTrue();
+    assertThat(configuration.isQueuePrefetch()).isTrue();
+    assertThat(configuration.getStaleWhileRevalidateSeconds()).isEqualTo(300);
+    assertThat(configuration.getConnectTimeoutSeconds()).isEqualTo(5);
+    assertThat(configuration.getReadTimeoutSeconds()).isEqualTo(30);
+    assertThat(configuration.getMinDownloadBytesPerSecond()).isEqualTo(4096);
+    assertThat(configuration.getLowDownloadRateSeconds()).isEqualTo(20);
+    assertThat(configuration.getDownloadTimeoutSeconds()).isEqualTo(300);
+    assertThat(configuration.isCacheEnabled()).isTrue();
+    assertThat(configuration.getCacheQuotaMegabytes()).isEqualTo(512);
+    assertThat(configuration.getStaleIfErrorSeconds()).isEqualTo(3600);
+    assertThat(configuration.isStreamingExtraction()).isTrue();
+    assertThat(configuration.getMaterializationStrategy()).isEqualTo(MaterializationStrategy.HARD_LINK);
+    assertThat(configuration.getExtractionParallelism()).isEqualTo(8);
+    assertThat(configuration.getMaxRetries()).isEqualTo(4);
+    assertThat(configuration.getRetryBaseDelayMillis()).isEqualTo(500);
+    assertThat(configuration.getRetryMaxDelayMillis()).isEqualTo(10000);
+    assertThat(configuration.getRetryDeadlineSeconds()).isEqualTo(30);
+    assertThat(configuration.getRetryBudgetPercent()).isEqualTo(20);
+    assertThat(configuration.getCircuitBreakerFailureThreshold()).isEqualTo(3);
+    assertThat(configuration.getCircuitBreakerOpenSeconds()).isEqualTo(10);
+    assertThat(configuration.getHedgeDelayMillis()).isEqualTo(500);
   }
 
   private GlobalLibraries loadConfiguration(String name) throws ConfiguratorException {
@@ -37,10 +37,9 @@ public class ConfigurationRoundtripTest {
     @Test
     public void testConfigurationRoundtrip() throws Exception {
         assertThat(globalLibraries.getLibraries()).isEmpty();
-        LibraryConfiguration originalTestLib = new LibraryConfiguration(
-                "foo",
-                new HttpRetriever("http://example.com/", credentials.getId(), true)
-        );
+        HttpRetriever originalRetriever = new HttpRetriever("http://example.com/", credentials.getId(), true);
+        originalRetriever.setImmutableVersions("\\d+\\.\\d+\\.\\d+");
+        LibraryConfiguration originalTestLib = new LibraryConfiguration("foo", originalRetriever);
         globalLibraries.getLibraries().add(originalTestLib);
         j.configRoundtrip();
 
@@ -56,6 +55,7 @@ public class ConfigurationRoundtripTest {
                 .isNotNull()
                 .isEqualTo(credentials.getId());
         assertThat(retriever.isPreemptiveAuth()).isTrue();
+        assertThat(retriever.getImmutableVersions()).isEqualTo("\\d+\\.\\d+\\.\\d+");
     }
 
     @Test
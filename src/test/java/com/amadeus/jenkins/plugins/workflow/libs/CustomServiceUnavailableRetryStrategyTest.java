@@ -1,8 +1,12 @@
 package com.amadeus.jenkins.plugins.workflow.libs;
 
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
 import org.apache.http.StatusLine;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -64,4 +68,48 @@ public class CustomServiceUnavailableRetryStrategyTest {
     public void testNullRetryOnStatusCodes() {
         assertThrows(IllegalArgumentException.class, () -> new CustomServiceUnavailableRetryStrategy(null));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRetryAfterIsFollowed() {
+        strategy = CustomServiceUnavailableRetryStrategy.of(() -> new BackoffPolicy(2, 3000, 30000, 60000),
+                new RetryBudget(() -> 0));
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_TOO_MANY_REQUESTS, "Too Many Requests");
+        response.setHeader(HttpHeaders.RETRY_AFTER, "7");
+
+        assertTrue(strategy.retryRequest(response, 1, new BasicHttpContext()));
+        assertEquals(7000, strategy.getRetryInterval());
+    }
+
+    @Test
+    public void testTooLongRetryAfterIsNotRetried() {
+        strategy = CustomServiceUnavailableRetryStrategy.of(() -> new BackoffPolicy(2, 3000, 30000, 60000),
+                new RetryBudget(() -> 0));
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+        response.setHeader(HttpHeaders.RETRY_AFTER, "3600");
+
+        assertFalse(strategy.retryRequest(response, 1, new BasicHttpContext()));
+    }
+
+    @Test
+    public void testJitteredInterval() {
+        strategy = CustomServiceUnavailableRetryStrategy.of(() -> new BackoffPolicy(2, 3000, 30000, 60000),
+                new RetryBudget(() -> 0));
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_BAD_GATEWAY, "Bad Gateway");
+
+        assertTrue(strategy.retryRequest(response, 2, new BasicHttpContext()));
+        long interval = strategy.getRetryInterval();
+        assertTrue(interval >= 0 && interval <= 6000, "interval " + interval);
+    }
+
+    @Test
+    public void testNoRetryWhenBudgetIsExhausted() {
+        RetryBudget budget = new RetryBudget(() -> 10);
+        while (budget.tryRetry("")) {
+            // Exhausts the budget
+        }
+        strategy = CustomServiceUnavailableRetryStrategy.of(() -> new BackoffPolicy(2, 3000, 30000, 60000), budget);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+
+        assertFalse(strategy.retryRequest(response, 1, new BasicHttpContext()));
+    }
+}
@@ -0,0 +1,81 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import hudson.model.TaskListener;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static com.amadeus.jenkins.plugins.workflow.libs.DownloadScheduler.Priority.BACKGROUND;
+import static com.amadeus.jenkins.plugins.workflow.libs.DownloadScheduler.Priority.BUILD;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadCallersTest {
+    private static final String KEY = "key";
+
+    @Test
+    public void testBuildRaisesBackgroundDownload() {
+        ByteArrayOutputStream prefetchLog = new ByteArrayOutputStream();
+        ByteArrayOutputStream buildLog = new ByteArrayOutputStream();
+        try (DownloadCallers.Caller prefetch = DownloadCallers.join(KEY, BACKGROUND, listener(prefetchLog))) {
+            DownloadCallers callers = prefetch.getCallers();
+            assertFalse(prefetch.hasRaisedPriority());
+            assertEquals(BACKGROUND, callers.getPriority());
+
+            try (DownloadCallers.Caller build = DownloadCallers.join(KEY, BUILD, listener(buildLog))) {
+                assertSame(callers, build.getCallers());
+                assertTrue(build.hasRaisedPriority());
+                assertEquals(BUILD, callers.getPriority());
+                callers.getListener().getLogger().print("downloading");
+            }
+
+            // Back to the background once the build is gone
+            assertEquals(BACKGROUND, callers.getPriority());
+            callers.getListener().getLogger().print("done");
+        }
+
+        assertEquals("downloading", buildLog.toString(StandardCharsets.UTF_8));
+        assertEquals("done", prefetchLog.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLaterCallersDoNotLowerPriority() {
+        try (DownloadCallers.Caller build = DownloadCallers.join(KEY, BUILD, listener(new ByteArrayOutputStream()));
+             DownloadCallers.Caller prefetch = DownloadCallers.join(KEY, BACKGROUND,
+                     listener(new ByteArrayOutputStream()))) {
+            assertFalse(prefetch.hasRaisedPriority());
+            assertEquals(BUILD, build.getCallers().getPriority());
+        }
+    }
+
+    @Test
+    public void testCallersOfOtherArchivesAreSeparate() {
+        try (DownloadCallers.Caller prefetch = DownloadCallers.join(KEY, BACKGROUND,
+                listener(new ByteArrayOutputStream()));
+             DownloadCallers.Caller build = DownloadCallers.join("other", BUILD,
+                     listener(new ByteArrayOutputStream()))) {
+            assertFalse(build.hasRaisedPriority());
+            assertEquals(BACKGROUND, prefetch.getCallers().getPriority());
+        }
+    }
+
+    @Test
+    public void testNewCallersOnceAllAreGone() {
+        DownloadCallers callers;
+        try (DownloadCallers.Caller build = DownloadCallers.join(KEY, BUILD, listener(new ByteArrayOutputStream()))) {
+            callers = build.getCallers();
+        }
+
+        try (DownloadCallers.Caller prefetch = DownloadCallers.join(KEY, BACKGROUND,
+                listener(new ByteArrayOutputStream()))) {
+            assertNotSame(callers, prefetch.getCallers());
+            assertEquals(BACKGROUND, prefetch.getCallers().getPriority());
+        }
+    }
+
+    private static TaskListener listener(ByteArrayOutputStream log) {
+        PrintStream logger = new PrintStream(log, true, StandardCharsets.UTF_8);
+        return () -> logger;
+    }
+}
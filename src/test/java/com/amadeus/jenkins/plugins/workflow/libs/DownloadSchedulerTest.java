@@ -0,0 +1,61 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.amadeus.jenkins.plugins.workflow.libs.DownloadScheduler.Priority.BACKGROUND;
+import static com.amadeus.jenkins.plugins.workflow.libs.DownloadScheduler.Priority.BUILD;
+import static com.amadeus.jenkins.plugins.workflow.libs.DownloadScheduler.Priority.VALIDATION;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadSchedulerTest {
+
+    @Test
+    public void testRunsTasksByPriorityThenInOrder() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(() -> 1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        Future<?> blocking = scheduler.submit(BACKGROUND, () -> blocked.await(10, TimeUnit.SECONDS));
+        List<String> ran = new CopyOnWriteArrayList<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        tasks.add(scheduler.submit(BACKGROUND, () -> ran.add("background 1")));
+        tasks.add(scheduler.submit(VALIDATION, () -> ran.add("validation")));
+        tasks.add(scheduler.submit(BACKGROUND, () -> ran.add("background 2")));
+        tasks.add(scheduler.submit(BUILD, () -> ran.add("build")));
+        assertEquals(4, scheduler.getQueuedTasks());
+        blocked.countDown();
+        blocking.get(10, TimeUnit.SECONDS);
+        for (Future<?> task : tasks) {
+            task.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(List.of("build", "validation", "background 1", "background 2"), ran);
+    }
+
+    @Test
+    public void testBoundsRunningTasks() throws Exception {
+        AtomicInteger threads = new AtomicInteger(2);
+        DownloadScheduler scheduler = new DownloadScheduler(threads::get);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(scheduler.submit(BACKGROUND, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                return running.decrementAndGet();
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(2, maxRunning.get());
+    }
+}
@@ -0,0 +1,64 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadWatchdogTest {
+
+    @Test
+    public void testAppliesTimeoutsToContext() throws Exception {
+        HttpClientContext context = HttpClientContext.create();
+        DownloadWatchdog watchdog = new DownloadWatchdog(5000, 30000, 0, 1000, 0);
+        watchdog.attachTo(context);
+
+        RequestConfig config = context.getRequestConfig();
+        assertEquals(5000, config.getConnectTimeout());
+        assertEquals(5000, config.getConnectionRequestTimeout());
+        assertEquals(30000, config.getSocketTimeout());
+        assertSame(watchdog, DownloadWatchdog.get(context));
+        assertEquals(Long.MAX_VALUE, watchdog.remainingMillis());
+    }
+
+    @Test
+    public void testCapsTimeoutsWithDeadline() throws Exception {
+        HttpClientContext context = HttpClientContext.create();
+        new DownloadWatchdog(5000, 30000, 0, 1000, 2000).attachTo(context);
+
+        assertTrue(context.getRequestConfig().getConnectTimeout() <= 2000);
+        assertTrue(context.getRequestConfig().getSocketTimeout() <= 2000);
+    }
+
+    @Test
+    public void testFailsAfterDeadline() throws Exception {
+        DownloadWatchdog watchdog = new DownloadWatchdog(5000, 30000, 0, 1000, 50);
+        Thread.sleep(100);
+
+        assertThrows(DownloadWatchdog.DeadlineExceededException.class, () -> watchdog.check(0));
+        assertThrows(DownloadWatchdog.DeadlineExceededException.class,
+                () -> watchdog.attachTo(HttpClientContext.create()));
+    }
+
+    @Test
+    public void testFailsWhenTooSlowOverWindow() throws Exception {
+        DownloadWatchdog watchdog = new DownloadWatchdog(5000, 30000, 1000, 50, 0);
+        // Not measured before the end of the window
+        watchdog.check(0);
+        Thread.sleep(100);
+
+        assertThrows(DownloadWatchdog.TooSlowException.class, () -> watchdog.check(10));
+        watchdog.restart(10);
+        Thread.sleep(100);
+        watchdog.check(100_000);
+    }
+
+    @Test
+    public void testAcceptsAnyRateWithoutMinimum() throws Exception {
+        DownloadWatchdog watchdog = new DownloadWatchdog(5000, 30000, 0, 10, 0);
+        Thread.sleep(50);
+
+        watchdog.check(0);
+    }
+}
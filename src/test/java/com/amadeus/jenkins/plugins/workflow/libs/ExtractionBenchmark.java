@@ -0,0 +1,108 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import hudson.FilePath;
+import hudson.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Extraction of a library made of thousands of small text files, as large libraries with many {@code resources/}
+ * files are, sequentially and with several threads, against {@link FilePath#unzip(FilePath)} as a baseline
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExtractionBenchmark {
+
+    static final int FILES = 2000;
+    static final int FILE_SIZE = 16 * 1024;
+
+    @Param({"1", "4", "16"})
+    public int parallelism;
+
+    private Path directory;
+    private Path archive;
+    private int extractions;
+
+    @Setup(Level.Trial)
+    public void createArchive() throws IOException {
+        directory = Files.createTempDirectory("extraction-benchmark");
+        archive = directory.resolve("library.zip");
+        writeLibrary(archive);
+    }
+
+    /**
+     * Writes a zip of {@link #FILES} files of {@link #FILE_SIZE} bytes, wrapped in a directory
+     */
+    static void writeLibrary(Path archive) throws IOException {
+        Random random = new Random(42);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (int i = 0; i < FILES; i++) {
+                out.putNextEntry(new ZipEntry("library/resources/templates/" + (i % 50) + "/template-" + i + ".json"));
+                out.write(text(random));
+                out.closeEntry();
+            }
+            out.putNextEntry(new ZipEntry("library/version.txt"));
+            out.write("1.0.0".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteExtractions() throws IOException {
+        for (int i = 0; i < extractions; i++) {
+            Util.deleteRecursive(directory.resolve("extraction-" + i).toFile());
+        }
+        extractions = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteArchive() throws IOException {
+        Util.deleteRecursive(directory.toFile());
+    }
+
+    @Benchmark
+    public Path extract() throws IOException {
+        Path destination = directory.resolve("extraction-" + extractions++);
+        ArchiveExtractor.extract(archive, destination, parallelism);
+        return destination;
+    }
+
+    /**
+     * The extraction the retriever made before, which does not depend on the parallelism
+     */
+    @Benchmark
+    public Path filePathUnzip() throws IOException, InterruptedException {
+        Path destination = directory.resolve("extraction-" + extractions++);
+        new FilePath(archive.toFile()).unzip(new FilePath(destination.toFile()));
+        return destination;
+    }
+
+    /**
+     * Compressible content, similar to source files
+     */
+    private static byte[] text(Random random) {
+        StringBuilder text = new StringBuilder(FILE_SIZE);
+        while (text.length() < FILE_SIZE) {
+            text.append("  \"key").append(random.nextInt(100)).append("\": \"value ").append(random.nextInt()).append("\",\n");
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
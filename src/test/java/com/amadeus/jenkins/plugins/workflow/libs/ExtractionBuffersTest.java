@@ -0,0 +1,108 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExtractionBuffersTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testInflate() throws IOException {
+        byte[] content = content(5 * ExtractionBuffers.BUFFER_SIZE + 123);
+        Path target = directory.resolve("file");
+        try (ExtractionBuffers buffers = ExtractionBuffers.acquire()) {
+            buffers.inflate(new ByteArrayInputStream(deflate(content)), target);
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testInflateSuccessiveEntries() throws IOException {
+        try (ExtractionBuffers buffers = ExtractionBuffers.acquire()) {
+            buffers.inflate(new ByteArrayInputStream(deflate(utf8("first"))), directory.resolve("first"));
+            buffers.inflate(new ByteArrayInputStream(deflate(utf8("second"))), directory.resolve("second"));
+        }
+
+        assertEquals("first", Files.readString(directory.resolve("first")));
+        assertEquals("second", Files.readString(directory.resolve("second")));
+    }
+
+    @Test
+    public void testInflateTruncatedContent() throws IOException {
+        byte[] deflated = deflate(content(3 * ExtractionBuffers.BUFFER_SIZE));
+        try (ExtractionBuffers buffers = ExtractionBuffers.acquire()) {
+            assertThrows(EOFException.class, () -> buffers.inflate(
+                    new ByteArrayInputStream(Arrays.copyOf(deflated, deflated.length / 2)), directory.resolve("file")));
+        }
+    }
+
+    @Test
+    public void testInflateInvalidContent() {
+        try (ExtractionBuffers buffers = ExtractionBuffers.acquire()) {
+            assertThrows(ZipException.class, () -> buffers.inflate(
+                    new ByteArrayInputStream(new byte[] {(byte) 0xff, (byte) 0xff, 1, 2}), directory.resolve("file")));
+        }
+    }
+
+    @Test
+    public void testCopyReplacesFileWithoutModifyingIt() throws IOException {
+        Path target = directory.resolve("file");
+        Files.writeString(target, "previous");
+        Path link = Files.createLink(directory.resolve("link"), target);
+        try (ExtractionBuffers buffers = ExtractionBuffers.acquire()) {
+            buffers.copy(new ByteArrayInputStream(utf8("new")), target);
+        }
+
+        assertEquals("new", Files.readString(target));
+        assertEquals("previous", Files.readString(link));
+    }
+
+    @Test
+    public void testBuffersAreReused() {
+        ExtractionBuffers buffers = ExtractionBuffers.acquire();
+        buffers.close();
+
+        try (ExtractionBuffers reused = ExtractionBuffers.acquire()) {
+            assertSame(buffers, reused);
+        }
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        Random random = new Random(42);
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return content;
+    }
+
+    private static byte[] deflate(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,151 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HedgedRequestsTest {
+
+    @Test
+    public void testFailsOverToNextMirror() throws Exception {
+        FakeAttempt failing = new FakeAttempt("main", 0, true);
+        FakeAttempt mirror = new FakeAttempt("mirror", 0, false);
+
+        assertEquals("mirror", HedgedRequests.first(List.of(failing, mirror), 0).mirror);
+        assertTrue(failing.sent && mirror.sent);
+    }
+
+    @Test
+    public void testDoesNotRequestMirrorsWhenMainAnswers() throws Exception {
+        FakeAttempt main = new FakeAttempt("main", 0, false);
+        FakeAttempt mirror = new FakeAttempt("mirror", 0, false);
+
+        assertEquals("main", HedgedRequests.first(List.of(main, mirror), 1000).mirror);
+        assertFalse(mirror.sent);
+    }
+
+    @Test
+    public void testHedgesSlowMirror() throws Exception {
+        FakeAttempt slow = new FakeAttempt("main", 60000, false);
+        FakeAttempt mirror = new FakeAttempt("mirror", 0, false);
+
+        assertEquals("mirror", HedgedRequests.first(List.of(slow, mirror), 50).mirror);
+        assertTrue(slow.aborted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitsForSlowMirrorWhenNextOneFails() throws Exception {
+        FakeAttempt slow = new FakeAttempt("main", 300, false);
+        FakeAttempt failing = new FakeAttempt("mirror", 0, true);
+
+        assertEquals("main", HedgedRequests.first(List.of(slow, failing), 50).mirror);
+        assertTrue(failing.sent);
+    }
+
+    @Test
+    public void testClosesLateAnswerOfAbandonedMirror() throws Exception {
+        FakeAttempt late = new FakeAttempt("main", 300, false);
+        late.ignoresAbort = true;
+        FakeAttempt mirror = new FakeAttempt("mirror", 0, false);
+
+        Answer answer = HedgedRequests.first(List.of(late, mirror), 50);
+        assertEquals("mirror", answer.mirror);
+        assertFalse(answer.closed);
+        assertTrue(late.closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReportsFailuresOfAllMirrors() {
+        FakeAttempt main = new FakeAttempt("main", 0, true);
+        FakeAttempt mirror = new FakeAttempt("mirror", 100, true);
+
+        IOException e = assertThrows(IOException.class, () -> HedgedRequests.first(List.of(main, mirror), 50));
+        assertEquals("main failed", e.getMessage());
+        assertEquals("mirror failed", e.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void testReportsFailuresInMirrorOrder() {
+        FakeAttempt main = new FakeAttempt("main", 300, true);
+        FakeAttempt mirror = new FakeAttempt("mirror", 0, true);
+        FakeAttempt lastMirror = new FakeAttempt("last mirror", 0, true);
+
+        IOException e = assertThrows(IOException.class,
+                () -> HedgedRequests.first(List.of(main, mirror, lastMirror), 50));
+        assertEquals("main failed", e.getMessage());
+        assertEquals("mirror failed", e.getSuppressed()[0].getMessage());
+        assertEquals("last mirror failed", e.getSuppressed()[1].getMessage());
+    }
+
+    private static final class Answer implements Closeable {
+        private final String mirror;
+        private final CountDownLatch closedLatch;
+        private volatile boolean closed;
+
+        Answer(String mirror, CountDownLatch closedLatch) {
+            this.mirror = mirror;
+            this.closedLatch = closedLatch;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            closedLatch.countDown();
+        }
+    }
+
+    private static final class FakeAttempt implements HedgedRequests.Attempt<Answer> {
+        private final String mirror;
+        private final long delayMillis;
+        private final boolean fails;
+        private final CountDownLatch aborted = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private volatile boolean ignoresAbort;
+        private volatile boolean sent;
+
+        FakeAttempt(String mirror, long delayMillis, boolean fails) {
+            this.mirror = mirror;
+            this.delayMillis = delayMillis;
+            this.fails = fails;
+        }
+
+        @Override
+        public Answer send() throws IOException {
+            sent = true;
+            long end = System.currentTimeMillis() + delayMillis;
+            if (ignoresAbort) {
+                // Like a response arriving right after the request was aborted
+                while (System.currentTimeMillis() < end) {
+                    try {
+                        Thread.sleep(Math.max(1, end - System.currentTimeMillis()));
+                    } catch (InterruptedException e) {
+                        // Keep waiting
+                    }
+                }
+            } else {
+                try {
+                    if (aborted.await(delayMillis, TimeUnit.MILLISECONDS)) {
+                        throw new IOException(mirror + " aborted");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IOException(mirror + " interrupted");
+                }
+            }
+            if (fails) {
+                throw new IOException(mirror + " failed");
+            }
+            return new Answer(mirror, closed);
+        }
+
+        @Override
+        public void abort() {
+            aborted.countDown();
+        }
+    }
+}
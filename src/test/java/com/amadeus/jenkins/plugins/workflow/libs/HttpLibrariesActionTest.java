@@ -0,0 +1,37 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpLibrariesActionTest {
+
+    @Test
+    public void testRecordsEachLibraryOnceInOrder() {
+        HttpLibrariesAction action = new HttpLibrariesAction();
+        assertTrue(action.add("", "core", "master"));
+        assertTrue(action.add("", "utils", "1.2.3"));
+        assertFalse(action.add("", "core", "master"));
+        // Another version of the same library is another download
+        assertTrue(action.add("", "core", "develop"));
+
+        List<String> libraries = action.getLibraries().stream().map(Object::toString).collect(Collectors.toList());
+        assertEquals(List.of("core@master", "utils@1.2.3", "core@develop"), libraries);
+    }
+
+    @Test
+    public void testRecordsWhereEachLibraryIsDefined() {
+        HttpLibrariesAction action = new HttpLibrariesAction();
+        assertTrue(action.add("", "core", "master"));
+        // A folder library of the same name is another library
+        assertTrue(action.add("team", "core", "master"));
+        assertFalse(action.add("team", "core", "master"));
+
+        List<String> scopes = action.getLibraries().stream().map(HttpLibrariesAction.Library::getScope)
+                .collect(Collectors.toList());
+        assertEquals(List.of("", "team"), scopes);
+    }
+}
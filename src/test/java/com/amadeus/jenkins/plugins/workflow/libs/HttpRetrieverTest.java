@@ -3,6 +3,7 @@ package com.amadeus.jenkins.plugins.workflow.libs;
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import com.github.tomakehurst.wiremock.client.BasicCredentials;
 import com.github.tomakehurst.wiremock.client.MappingBuilder;
 import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
 import com.github.tomakehurst.wiremock.client.WireMock;
@@ -10,11 +11,13 @@ import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 import com.github.tomakehurst.wiremock.http.RequestMethod;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.github.tomakehurst.wiremock.matching.MatchResult;
+import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
 import com.github.tomakehurst.wiremock.matching.UrlPattern;
 import com.github.tomakehurst.wiremock.stubbing.Scenario;
 import hudson.FilePath;
 import hudson.model.Computer;
 import hudson.model.FreeStyleProject;
+import hudson.model.Item;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.slaves.WorkspaceList;
@@ -44,6 +47,7 @@ public class HttpRetrieverTest {
 
     FilePath target;
     private static final String RSC_FILE = "http-lib-retriever-tests.zip";
+    private static final String TAR_GZ_FILE = "http-lib-retriever-tests.tar.gz";
 
     @Mock
     Run run;
@@ -67,10 +71,13 @@ public class HttpRetrieverTest {
 
     HttpRetrieverStub retriever;
 
+    LibraryArchiveCache archiveCache;
+
     @org.junit.Before
     public void setUp() throws Exception {
 
         target = new FilePath(Files.createTempDirectory("http-lib-retriever-tests").toFile());
+        archiveCache = new LibraryArchiveCache(Files.createTempDirectory("http-lib-retriever-cache"));
         Mockito.when(run.getParent()).thenReturn(parent);
         Mockito.when(jenkins.getWorkspaceFor(parent)).thenReturn(target);
         Mockito.when(listener.getLogger()).thenReturn(System.out);
@@ -316,6 +323,324 @@ public class HttpRetrieverTest {
         Assert.assertEquals(FormValidation.Kind.WARNING, validation.kind);
     }
 
+    @Test
+    public void reusesCachedArchiveIfNotModified() throws Exception {
+        UrlPattern urlPattern = WireMock.urlMatching(".*" + RSC_FILE);
+        wireMock.stubFor(
+                WireMock.get(urlPattern)
+                        .atPriority(1)
+                        .withHeader(HttpHeaders.IF_NONE_MATCH, WireMock.absent())
+                        .withBasicAuth(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())
+                        .willReturn(WireMock.aResponse().withHeader(HttpHeaders.ETAG, "\"v1\"").withBody(getArchiveBytes(RSC_FILE))));
+        wireMock.stubFor(
+                WireMock.get(urlPattern)
+                        .atPriority(1)
+                        .withHeader(HttpHeaders.IF_NONE_MATCH, WireMock.equalTo("\"v1\""))
+                        .withBasicAuth(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())
+                        .willReturn(WireMock.status(HttpURLConnection.HTTP_NOT_MODIFIED)));
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+
+        FilePath secondTarget = new FilePath(Files.createTempDirectory("http-lib-retriever-tests").toFile());
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", secondTarget, run, listener);
+        Assert.assertTrue(secondTarget.child("version.txt").exists());
+        Assert.assertTrue(secondTarget.child("src").exists());
+        wireMock.verify(1, WireMock.getRequestedFor(urlPattern)
+                .withHeader(HttpHeaders.IF_NONE_MATCH, WireMock.equalTo("\"v1\""))
+                .withBasicAuth(new BasicCredentials(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())));
+    }
+
+    @Test
+    public void reusesCachedArchiveOfImmutableVersionWithoutRequest() throws Exception {
+        retriever.setImmutableVersions("\\d+\\.\\d+\\.\\d+");
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+
+        FilePath secondTarget = new FilePath(Files.createTempDirectory("http-lib-retriever-tests").toFile());
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", secondTarget, run, listener);
+        Assert.assertTrue(secondTarget.child("version.txt").exists());
+        Assert.assertTrue(secondTarget.child("src").exists());
+        wireMock.verify(1, WireMock.getRequestedFor(WireMock.urlMatching(".*" + RSC_FILE))
+                .withBasicAuth(new BasicCredentials(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())));
+    }
+
+    @Test
+    public void retrievesPrefetchedArchiveWithoutRequest() throws Exception {
+        retriever.setImmutableVersions("\\d+\\.\\d+\\.\\d+");
+        retriever.prefetch("http-lib-retriever-tests", "1.2.3", (Item) null, DownloadScheduler.Priority.BACKGROUND,
+                listener);
+
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        Assert.assertTrue(target.child("src").exists());
+        wireMock.verify(1, WireMock.getRequestedFor(WireMock.urlMatching(".*" + RSC_FILE))
+                .withBasicAuth(new BasicCredentials(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())));
+    }
+
+    @Test
+    public void revalidatesVersionNotMatchingImmutableVersions() throws Exception {
+        createRetriever(getUrl(RSC_FILE), RSC_FILE, Arrays.asList(HttpURLConnection.HTTP_OK, HttpURLConnection.HTTP_OK));
+        retriever.setImmutableVersions("\\d+\\.\\d+\\.\\d+");
+        retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+        retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+        wireMock.verify(2, WireMock.getRequestedFor(WireMock.urlMatching(".*" + RSC_FILE))
+                .withBasicAuth(new BasicCredentials(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())));
+    }
+
+    @Test
+    public void raisesPriorityOfPrefetchJoinedByBuild() throws Exception {
+        retriever.admissionControl = new AdmissionControl(() -> 2, () -> false);
+        // Another background download uses the whole share of the background downloads
+        AdmissionControl.Permit other = retriever.admissionControl.acquire("http://localhost:" + wireMock.port(),
+                DownloadScheduler.Priority.BACKGROUND, 0);
+        Thread prefetch = new Thread(() -> {
+            try {
+                retriever.prefetch("http-lib-retriever-tests", "master", (Item) null,
+                        DownloadScheduler.Priority.BACKGROUND, TaskListener.NULL);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        RequestPatternBuilder authenticatedGet = WireMock.getRequestedFor(WireMock.urlMatching(".*" + RSC_FILE))
+                .withBasicAuth(new BasicCredentials(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText()));
+        try {
+            prefetch.start();
+            Thread.sleep(200);
+            wireMock.verify(0, authenticatedGet);
+
+            // The build does not wait for the other background download
+            retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+            Assert.assertTrue(target.child("version.txt").exists());
+            prefetch.join(10000);
+            Assert.assertFalse(prefetch.isAlive());
+        } finally {
+            other.close();
+        }
+        wireMock.verify(1, authenticatedGet);
+    }
+
+    @Test
+    public void usesCachedArchiveWhileRevalidatingItInBackground() throws Exception {
+        createRetriever(getUrl(RSC_FILE), RSC_FILE);
+        // The revalidation is slow to answer, which the second retrieval must not wait for
+        for (String state : Arrays.asList(Scenario.STARTED, "Cached")) {
+            wireMock.stubFor(WireMock.get(WireMock.urlMatching(".*" + RSC_FILE))
+                    .inScenario("Revalidation")
+                    .whenScenarioStateIs(state)
+                    .withBasicAuth(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())
+                    .atPriority(1)
+                    .willReturn(WireMock.aResponse().withFixedDelay(state.equals(Scenario.STARTED) ? 0 : 5000)
+                            .withBody(getArchiveBytes(RSC_FILE)))
+                    .willSetStateTo("Cached"));
+        }
+        retriever.staleWhileRevalidateSeconds = 3600;
+        retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+
+        FilePath secondTarget = new FilePath(Files.createTempDirectory("http-lib-retriever-tests").toFile());
+        long start = System.currentTimeMillis();
+        retriever.retrieve("http-lib-retriever-tests", "master", secondTarget, run, listener);
+        Assert.assertTrue(System.currentTimeMillis() - start < 4000);
+        Assert.assertTrue(secondTarget.child("version.txt").exists());
+        Assert.assertTrue(secondTarget.child("src").exists());
+        RequestPatternBuilder authenticatedGet = WireMock.getRequestedFor(WireMock.urlMatching(".*" + RSC_FILE))
+                .withBasicAuth(new BasicCredentials(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText()));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (wireMock.findAll(authenticatedGet).size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        wireMock.verify(2, authenticatedGet);
+    }
+
+    @Test
+    public void reusesCachedArchiveWhileFreshAccordingToCacheControl() throws Exception {
+        wireMock.stubFor(
+                WireMock.get(WireMock.urlMatching(".*" + RSC_FILE))
+                        .atPriority(1)
+                        .withBasicAuth(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())
+                        .willReturn(WireMock.aResponse().withHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=3600")
+                                .withBody(getArchiveBytes(RSC_FILE))));
+        retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+        retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+        wireMock.verify(1, WireMock.getRequestedFor(WireMock.urlMatching(".*" + RSC_FILE))
+                .withBasicAuth(new BasicCredentials(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())));
+    }
+
+    @Test
+    public void suspendsRequestsToFailingHost() throws Exception {
+        archiveCache = null;
+        createRetriever(getUrl(RSC_FILE), RSC_FILE, Arrays.asList(HttpURLConnection.HTTP_UNAVAILABLE,
+                HttpURLConnection.HTTP_UNAVAILABLE, HttpURLConnection.HTTP_UNAVAILABLE));
+        retriever.circuitBreaker = new CircuitBreaker(() -> 1, () -> 60000);
+        Assert.assertThrows(IOException.class,
+                () -> retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener));
+        Assert.assertThrows(CircuitBreaker.OpenCircuitException.class,
+                () -> retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener));
+        wireMock.verify(3, WireMock.getRequestedFor(WireMock.urlMatching(".*" + RSC_FILE))
+                .withBasicAuth(new BasicCredentials(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())));
+    }
+
+    @Test
+    public void usesCachedArchiveWhileHostIsSuspended() throws Exception {
+        retriever.circuitBreaker = new CircuitBreaker(() -> 1, () -> 60000);
+        retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+        retriever.circuitBreaker.onFailure("http://localhost:" + wireMock.port());
+
+        FilePath secondTarget = new FilePath(Files.createTempDirectory("http-lib-retriever-tests").toFile());
+        retriever.retrieve("http-lib-retriever-tests", "master", secondTarget, run, listener);
+        Assert.assertTrue(secondTarget.child("version.txt").exists());
+        wireMock.verify(1, WireMock.getRequestedFor(WireMock.urlMatching(".*" + RSC_FILE))
+                .withBasicAuth(new BasicCredentials(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())));
+    }
+
+    @Test
+    public void usesCachedArchiveWhenServerFails() throws Exception {
+        createRetriever(getUrl(RSC_FILE), RSC_FILE, Arrays.asList(HttpURLConnection.HTTP_OK,
+                HttpURLConnection.HTTP_INTERNAL_ERROR, HttpURLConnection.HTTP_INTERNAL_ERROR, HttpURLConnection.HTTP_INTERNAL_ERROR));
+        retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+        long staleArchivesUsed = HttpRetrieverMetrics.get(HttpRetrieverMetrics.Metric.STALE_ARCHIVES_USED);
+
+        FilePath secondTarget = new FilePath(Files.createTempDirectory("http-lib-retriever-tests").toFile());
+        retriever.retrieve("http-lib-retriever-tests", "master", secondTarget, run, listener);
+        Assert.assertTrue(secondTarget.child("version.txt").exists());
+        Assert.assertEquals(staleArchivesUsed + 1, HttpRetrieverMetrics.get(HttpRetrieverMetrics.Metric.STALE_ARCHIVES_USED));
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenServerFailsWithoutStaleIfError() throws Exception {
+        createRetriever(getUrl(RSC_FILE), RSC_FILE, Arrays.asList(HttpURLConnection.HTTP_OK,
+                HttpURLConnection.HTTP_INTERNAL_ERROR, HttpURLConnection.HTTP_INTERNAL_ERROR, HttpURLConnection.HTTP_INTERNAL_ERROR));
+        retriever.staleIfErrorSeconds = 0;
+        retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+
+        FilePath secondTarget = new FilePath(Files.createTempDirectory("http-lib-retriever-tests").toFile());
+        retriever.retrieve("http-lib-retriever-tests", "master", secondTarget, run, listener);
+    }
+
+    @Test
+    public void failsOverToMirror() throws Exception {
+        createRetriever(getUrl("missing.zip"), RSC_FILE);
+        retriever.setMirrorURLs("\n" + getUrl(RSC_FILE) + "\n");
+        retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        wireMock.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/missing.zip")));
+    }
+
+    @Test
+    public void failsWhenAllMirrorsFail() throws Exception {
+        createRetriever(getUrl("missing.zip"), RSC_FILE);
+        retriever.setMirrorURLs(getUrl("missing-too.zip"));
+        IOException e = Assert.assertThrows(IOException.class,
+                () -> retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener));
+        Assert.assertTrue(e.getMessage().contains("missing.zip"));
+        Assert.assertTrue(e.getSuppressed()[0].getMessage().contains("missing-too.zip"));
+    }
+
+    @Test
+    public void hedgesSlowRequestWithMirror() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/slow.zip"))
+                .willReturn(WireMock.aResponse().withFixedDelay(30000).withBody(getArchiveBytes(RSC_FILE))));
+        createRetriever(getUrl("slow.zip"), RSC_FILE);
+        retriever.setMirrorURLs(getUrl(RSC_FILE));
+        retriever.hedgeDelayMillis = 100;
+        retriever.circuitBreaker = new CircuitBreaker(() -> 1, () -> 60000);
+        long start = System.currentTimeMillis();
+        retriever.retrieve("http-lib-retriever-tests", "master", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+        // The slow request aborted for the mirror is not a failure of the host
+        Assert.assertEquals(CircuitBreaker.State.CLOSED,
+                retriever.circuitBreaker.getState("http://localhost:" + wireMock.port()));
+    }
+
+    @Test
+    public void extractsWhileDownloadingAndCachesTheArchive() throws Exception {
+        createRetriever(getUrl(RSC_FILE), RSC_FILE, Arrays.asList(HttpURLConnection.HTTP_OK, HttpURLConnection.HTTP_OK));
+        retriever.streamingExtraction = true;
+        retriever.setImmutableVersions("\\d+\\.\\d+\\.\\d+");
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        Assert.assertTrue(target.child("src").exists());
+
+        FilePath secondTarget = new FilePath(Files.createTempDirectory("http-lib-retriever-tests").toFile());
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", secondTarget, run, listener);
+        Assert.assertTrue(secondTarget.child("version.txt").exists());
+        Assert.assertTrue(secondTarget.child("src").exists());
+        wireMock.verify(1, WireMock.getRequestedFor(WireMock.urlMatching(".*" + RSC_FILE))
+                .withBasicAuth(new BasicCredentials(passwordCredentials.getUsername(), passwordCredentials.getPassword().getPlainText())));
+    }
+
+    @Test
+    public void extractsZipArchiveOnceDownloadedWithoutCache() throws Exception {
+        archiveCache = null;
+        createRetriever(getUrl("http-lib-retriever-tests-encased-in-upper-directory.zip"), "http-lib-retriever-tests-encased-in-upper-directory.zip");
+        retriever.streamingExtraction = true;
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        Assert.assertTrue(target.child("src").exists());
+    }
+
+    @Test
+    public void extractsTarGzArchive() throws Exception {
+        createRetriever(getUrl(TAR_GZ_FILE), TAR_GZ_FILE);
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        Assert.assertTrue(target.child("src").exists());
+    }
+
+    @Test
+    public void extractsTarGzArchiveWithoutCache() throws Exception {
+        archiveCache = null;
+        createRetriever(getUrl(TAR_GZ_FILE), TAR_GZ_FILE);
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        Assert.assertTrue(target.child("src").exists());
+    }
+
+    @Test
+    public void extractsTarGzWhileDownloading() throws Exception {
+        archiveCache = null;
+        createRetriever(getUrl(TAR_GZ_FILE), TAR_GZ_FILE);
+        retriever.streamingExtraction = true;
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        Assert.assertTrue(target.child("src").exists());
+    }
+
+    @Test
+    public void extractsFilesInParallel() throws Exception {
+        retriever.extractionParallelism = 4;
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        Assert.assertTrue(target.child("src").exists());
+    }
+
+    @Test
+    public void linksExtractedFilesIntoTarget() throws Exception {
+        retriever.materializationStrategy = MaterializationStrategy.HARD_LINK;
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        Assert.assertTrue(target.child("src").exists());
+    }
+
+    @Test
+    public void movesExtractedFilesIntoTarget() throws Exception {
+        createRetriever(getUrl(RSC_FILE), RSC_FILE, Arrays.asList(HttpURLConnection.HTTP_OK, HttpURLConnection.HTTP_OK));
+        retriever.materializationStrategy = MaterializationStrategy.MOVE;
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", target, run, listener);
+        Assert.assertTrue(target.child("version.txt").exists());
+        Assert.assertTrue(target.child("src").exists());
+
+        FilePath secondTarget = new FilePath(Files.createTempDirectory("http-lib-retriever-tests").toFile());
+        retriever.retrieve("http-lib-retriever-tests", "1.2.3", secondTarget, run, listener);
+        Assert.assertTrue(secondTarget.child("version.txt").exists());
+        Assert.assertTrue(secondTarget.child("src").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void failsIfContainsRefToParentWhileExtractingWhileDownloading() throws Exception {
+        createRetriever(getUrl("folder-lib_hack.zip"), "folder-lib_hack.zip");
+        retriever.streamingExtraction = true;
+        retriever.retrieve("folder-lib_hack", "1.2.3", target, run, listener);
+    }
+
     @Test(expected = IOException.class)
     public void failsIfContainsRefToParent() throws Exception {
         createRetriever(getUrl("folder-lib_hack.zip"), "folder-lib_hack.zip");
@@ -330,6 +655,14 @@ public class HttpRetrieverTest {
 
         private boolean httpsUsed = true;
         private boolean preemptiveAuth = false;
+        private boolean streamingExtraction = false;
+        private MaterializationStrategy materializationStrategy = MaterializationStrategy.COPY;
+        private int extractionParallelism = 1;
+        private CircuitBreaker circuitBreaker = new CircuitBreaker(() -> 0, () -> 0);
+        private long staleIfErrorSeconds = HttpRetrieverConfiguration.DEFAULT_STALE_IF_ERROR_SECONDS;
+        private long hedgeDelayMillis = HttpRetrieverConfiguration.DEFAULT_HEDGE_DELAY_MILLIS;
+        private long staleWhileRevalidateSeconds = 0;
+        private AdmissionControl admissionControl = AdmissionControl.get();
 
         public HttpRetrieverStub(String url) {
             super(url, "credentialsId", false);
@@ -350,6 +683,11 @@ public class HttpRetrieverTest {
             return passwordCredentials;
         }
 
+        @Override
+        UsernamePasswordCredentials findCredentials(String credentialsId, Item context) {
+            return passwordCredentials;
+        }
+
         @Override
         boolean isSecure(URL url) {
             return httpsUsed;
@@ -367,5 +705,50 @@ public class HttpRetrieverTest {
         WorkspaceList.Lease getWorkspace(FilePath dir, Computer computer) throws InterruptedException {
             return WorkspaceList.Lease.createDummyLease(dir);
         }
+
+        @Override
+        LibraryArchiveCache getArchiveCache() {
+            return archiveCache;
+        }
+
+        @Override
+        boolean isStreamingExtraction() {
+            return streamingExtraction;
+        }
+
+        @Override
+        MaterializationStrategy getMaterializationStrategy() {
+            return materializationStrategy;
+        }
+
+        @Override
+        int getExtractionParallelism() {
+            return extractionParallelism;
+        }
+
+        @Override
+        CircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        @Override
+        long getStaleIfErrorSeconds() {
+            return staleIfErrorSeconds;
+        }
+
+        @Override
+        long getHedgeDelayMillis() {
+            return hedgeDelayMillis;
+        }
+
+        @Override
+        long getStaleWhileRevalidateSeconds() {
+            return staleWhileRevalidateSeconds;
+        }
+
+        @Override
+        AdmissionControl getAdmissionControl() {
+            return admissionControl;
+        }
     }
 }
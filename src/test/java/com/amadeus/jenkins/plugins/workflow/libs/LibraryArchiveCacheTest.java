@@ -0,0 +1,262 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+public class LibraryArchiveCacheTest {
+    private static final String URL = "https://example.org/lib-1.0.zip";
+
+    @TempDir
+    Path root;
+
+    private LibraryArchiveCache cache;
+    private String key;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new LibraryArchiveCache(root);
+        key = LibraryArchiveCache.keyOf(URL, null);
+    }
+
+    @Test
+    public void testLookupMissingEntry() {
+        assertNull(cache.lookup(key));
+    }
+
+    @Test
+    public void testStoreAndLookup() throws IOException {
+        cache.store(key, URL, content("v1"), "\"etag-1\"", "Wed, 21 Oct 2015 07:28:00 GMT",
+                CacheControl.parse("max-age=60"));
+
+        CachedArchive cached = cache.lookup(key);
+        assertNotNull(cached);
+        assertEquals(URL, cached.getUrl());
+        assertEquals("\"etag-1\"", cached.getEtag());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", cached.getLastModified());
+        assertTrue(cached.isRevalidable());
+        assertEquals("v1", Files.readString(cached.getArchive()));
+        assertEquals(60, cached.getCacheControl().getMaxAgeSeconds());
+        assertTrue(cached.isFresh(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testStoreReplacesPreviousArchive() throws IOException {
+        CachedArchive first = cache.store(key, URL, content("v1"), "\"etag-1\"", null, CacheControl.NONE);
+        cache.store(key, URL, content("v2"), null, null, CacheControl.NONE);
+
+        CachedArchive cached = cache.lookup(key);
+        assertNotNull(cached);
+        assertNull(cached.getEtag());
+        assertFalse(cached.isRevalidable());
+        assertEquals("v2", Files.readString(cached.getArchive()));
+        assertFalse(Files.exists(first.getArchive()));
+    }
+
+    @Test
+    public void testRevalidatedUpdatesValidationTime() throws IOException {
+        CachedArchive stored = cache.store(key, URL, content("v1"), "\"etag-1\"", null, CacheControl.NONE);
+        CachedArchive revalidated = cache.revalidated(stored.withValidatedAt(0), CacheControl.parse("max-age=60"));
+
+        CachedArchive cached = cache.lookup(key);
+        assertNotNull(cached);
+        assertEquals(revalidated.getValidatedAt(), cached.getValidatedAt());
+        assertTrue(cached.getValidatedAt() > 0);
+        assertEquals(stored.getArchive(), cached.getArchive());
+        assertEquals(60, cached.getCacheControl().getMaxAgeSeconds());
+    }
+
+    @Test
+    public void testStoreRecordsDigest() throws IOException {
+        cache.store(key, URL, content("v1"), null, null, CacheControl.NONE);
+
+        CachedArchive cached = cache.lookup(key);
+        assertNotNull(cached);
+        assertEquals("3bfc269594ef649228e9a74bab00f042efc91d5acc6fbee31a382e80d42388fe", cached.getDigest());
+    }
+
+    @Test
+    public void testTreeIsSharedByArchivesWithTheSameContent() throws IOException {
+        String otherKey = LibraryArchiveCache.keyOf("https://mirror.example.org/lib-1.0.zip", null);
+        CachedArchive archive = cache.store(key, URL, zip("repo-sha/vars/hello.groovy", "def call() {}"),
+                null, null, CacheControl.NONE);
+        CachedArchive alias = cache.store(otherKey, URL, zip("repo-sha/vars/hello.groovy", "def call() {}"),
+                null, null, CacheControl.NONE);
+
+        Path tree = cache.tree(archive, 1);
+        assertEquals("def call() {}", Files.readString(tree.resolve("vars/hello.groovy")));
+        assertEquals(tree, cache.tree(alias, 1));
+        assertEquals(tree, cache.tree(archive, 1));
+    }
+
+    @Test
+    public void testTreeOfArchiveWithoutDigest() throws IOException {
+        CachedArchive stored = cache.store(key, URL, zip("version.txt", "1.0"), null, null, CacheControl.NONE);
+        CachedArchive legacy = new CachedArchive(key, URL, stored.getArchive(), null, null, null,
+                CacheControl.NONE, stored.getValidatedAt());
+
+        Path tree = cache.tree(legacy, 1);
+        assertEquals("1.0", Files.readString(tree.resolve("version.txt")));
+        assertEquals(tree.getFileName().toString(), cache.lookup(key).getDigest());
+    }
+
+    @Test
+    public void testPublishTreeExtractedMeanwhile() throws IOException {
+        Path first = cache.newStagingTree();
+        Files.writeString(first.resolve("version.txt"), "1.0");
+        Path second = cache.newStagingTree();
+        Files.writeString(second.resolve("version.txt"), "1.0");
+
+        Path tree = cache.publishTree(first, "digest");
+        assertEquals(tree, cache.publishTree(second, "digest"));
+        assertEquals("1.0", Files.readString(tree.resolve("version.txt")));
+        assertFalse(Files.exists(first));
+        assertFalse(Files.exists(second));
+    }
+
+    @Test
+    public void testPublishedTreeHasReadOnlyFiles() throws IOException {
+        Path staging = cache.newStagingTree();
+        Files.createDirectories(staging.resolve("vars"));
+        Files.writeString(staging.resolve("vars/hello.groovy"), "def call() {}");
+
+        Path tree = cache.publishTree(staging, "digest");
+        assertFalse(Files.getPosixFilePermissions(tree.resolve("vars/hello.groovy"))
+                .contains(PosixFilePermission.OWNER_WRITE));
+        assertTrue(Files.getPosixFilePermissions(tree.resolve("vars")).contains(PosixFilePermission.OWNER_WRITE));
+
+        LibraryArchiveCache.deleteRecursively(tree);
+        assertFalse(Files.exists(tree));
+    }
+
+    @Test
+    public void testCollectGarbageDeletesUnreferencedTrees() throws IOException {
+        Path first = cache.tree(cache.store(key, URL, zip("version.txt", "1.0"), null, null, CacheControl.NONE), 1);
+        Path second = cache.tree(cache.store(key, URL, zip("version.txt", "1.1"), null, null, CacheControl.NONE), 1);
+        makeOld(first);
+        makeOld(second);
+
+        cache.collectGarbage(0);
+        assertFalse(Files.exists(first));
+        assertTrue(Files.exists(second));
+    }
+
+    @Test
+    public void testCollectGarbageKeepsRecentlyUsedTrees() throws IOException {
+        Path first = cache.tree(cache.store(key, URL, zip("version.txt", "1.0"), null, null, CacheControl.NONE), 1);
+        cache.store(key, URL, zip("version.txt", "1.1"), null, null, CacheControl.NONE);
+
+        cache.collectGarbage(0);
+        assertTrue(Files.exists(first));
+    }
+
+    @Test
+    public void testCollectGarbageEvictsLeastRecentlyUsedEntries() throws IOException, InterruptedException {
+        String recentKey = LibraryArchiveCache.keyOf("https://example.org/lib-2.0.zip", null);
+        Path old = cache.tree(cache.store(key, URL, zip("version.txt", "1.0"), null, null, CacheControl.NONE), 1);
+        Thread.sleep(10);
+        Path recent = cache.tree(cache.store(recentKey, URL, zip("version.txt", "2.0"), null, null, CacheControl.NONE), 1);
+        makeOld(old);
+        makeOld(recent);
+
+        long total = cache.collectGarbage(0);
+        long size = cache.collectGarbage(total - 1);
+        assertNull(cache.lookup(key));
+        assertFalse(Files.exists(old));
+        assertNotNull(cache.lookup(recentKey));
+        assertTrue(Files.exists(recent));
+        assertTrue(size > 0 && size < total);
+    }
+
+    @Test
+    public void testCollectGarbageKeepsLeasedEntriesAndTrees() throws IOException {
+        CachedArchive archive = cache.store(key, URL, zip("version.txt", "1.0"), null, null, CacheControl.NONE);
+        try (LibraryArchiveCache.Lease lease = cache.lease(key)) {
+            Path tree = lease.tree(archive, 1);
+            cache.store(key, URL, zip("version.txt", "1.1"), null, null, CacheControl.NONE);
+            makeOld(tree);
+
+            cache.collectGarbage(1);
+            assertNotNull(cache.lookup(key));
+            assertTrue(Files.exists(tree));
+
+            lease.close();
+            cache.collectGarbage(1);
+            assertNull(cache.lookup(key));
+            assertFalse(Files.exists(tree));
+        }
+    }
+
+    @Test
+    public void testLookupAfterRestart() throws IOException {
+        cache.store(key, URL, content("v1"), "\"etag-1\"", null, CacheControl.parse("max-age=60"));
+
+        CachedArchive cached = new LibraryArchiveCache(root).lookup(key);
+        assertNotNull(cached);
+        assertEquals("\"etag-1\"", cached.getEtag());
+        assertEquals("v1", Files.readString(cached.getArchive()));
+    }
+
+    @Test
+    public void testIndexIsRebuiltFromMetadata() throws IOException {
+        String oldKey = LibraryArchiveCache.keyOf("https://example.org/lib-0.9.zip", null);
+        cache.store(oldKey, URL, content("v0"), null, null, CacheControl.NONE);
+        cache.store(key, URL, content("v1"), "\"etag-1\"", null, CacheControl.NONE);
+        makeOld(root.resolve(oldKey).resolve("metadata.properties"));
+        Files.delete(root.resolve(CacheIndex.FILE_NAME));
+
+        LibraryArchiveCache restarted = new LibraryArchiveCache(root);
+        CachedArchive cached = restarted.lookup(key);
+        assertNotNull(cached);
+        assertEquals("\"etag-1\"", cached.getEtag());
+        restarted.collectGarbage(restarted.collectGarbage(0) - 1);
+        assertNull(restarted.lookup(oldKey));
+        assertNotNull(restarted.lookup(key));
+    }
+
+    @Test
+    public void testKeyDependsOnUser() {
+        UsernamePasswordCredentials credentials = Mockito.mock(UsernamePasswordCredentials.class);
+        when(credentials.getUsername()).thenReturn("user");
+        assertNotEquals(key, LibraryArchiveCache.keyOf(URL, credentials));
+        assertEquals(LibraryArchiveCache.keyOf(URL, credentials), LibraryArchiveCache.keyOf(URL, credentials));
+    }
+
+    private static void makeOld(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+    }
+
+    private static ByteArrayInputStream zip(String name, String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            ZipEntry entry = new ZipEntry(name);
+            // Same content whenever it is built
+            entry.setTime(0);
+            out.putNextEntry(entry);
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    private static ByteArrayInputStream content(String value) {
+        return new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,119 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MaterializationStrategyTest {
+
+    @TempDir
+    Path root;
+
+    private Path source;
+    private Path target;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        source = Files.createDirectories(root.resolve("workspace"));
+        target = root.resolve("build/libs/lib");
+        Files.createDirectories(source.resolve("vars"));
+        Files.writeString(source.resolve("vars/hello.groovy"), "def call() {}");
+        Files.writeString(source.resolve("version.txt"), "1.2.3");
+    }
+
+    @Test
+    public void testCopy() throws IOException {
+        MaterializationStrategy.COPY.materialize(source, target);
+
+        assertMaterialized();
+        assertFalse(Files.isSameFile(source.resolve("version.txt"), target.resolve("version.txt")));
+        assertTrue(Files.exists(source.resolve("version.txt")));
+    }
+
+    @Test
+    public void testHardLink() throws IOException {
+        MaterializationStrategy.HARD_LINK.materialize(source, target);
+
+        assertMaterialized();
+        assertTrue(Files.isSameFile(source.resolve("vars/hello.groovy"), target.resolve("vars/hello.groovy")));
+    }
+
+    @Test
+    public void testHardLinkedFilesAreNotModifiedByNextExtraction() throws IOException {
+        MaterializationStrategy.HARD_LINK.materialize(source, target);
+        // As the extraction of the next version does
+        Files.copy(new ByteArrayInputStream("1.2.4".getBytes(StandardCharsets.UTF_8)), source.resolve("version.txt"),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        assertEquals("1.2.3", Files.readString(target.resolve("version.txt")));
+    }
+
+    @Test
+    public void testHardLinkedFilesStayReadOnly() throws IOException {
+        assertTrue(source.resolve("version.txt").toFile().setWritable(false, false));
+
+        MaterializationStrategy.HARD_LINK.materialize(source, target);
+
+        assertTrue(Files.isSameFile(source.resolve("version.txt"), target.resolve("version.txt")));
+        assertFalse(Files.getPosixFilePermissions(target.resolve("version.txt"))
+                .contains(PosixFilePermission.OWNER_WRITE));
+    }
+
+    @Test
+    public void testCopiedFilesAreWritable() throws IOException {
+        assertTrue(source.resolve("version.txt").toFile().setWritable(false, false));
+
+        MaterializationStrategy.COPY.materialize(source, target);
+
+        assertTrue(Files.getPosixFilePermissions(target.resolve("version.txt"))
+                .contains(PosixFilePermission.OWNER_WRITE));
+        assertFalse(Files.getPosixFilePermissions(source.resolve("version.txt"))
+                .contains(PosixFilePermission.OWNER_WRITE));
+    }
+
+    @Test
+    public void testMove() throws IOException {
+        MaterializationStrategy.MOVE.materialize(source, target);
+
+        assertMaterialized();
+        assertFalse(Files.exists(source.resolve("vars")));
+        assertFalse(Files.exists(source.resolve("version.txt")));
+    }
+
+    @Test
+    public void testSharedSourceIsNeverMoved() {
+        assertEquals(MaterializationStrategy.COPY, MaterializationStrategy.MOVE.forSharedSource());
+        assertEquals(MaterializationStrategy.COPY, MaterializationStrategy.COPY.forSharedSource());
+        assertEquals(MaterializationStrategy.HARD_LINK, MaterializationStrategy.HARD_LINK.forSharedSource());
+    }
+
+    @Test
+    public void testReplacesExistingFiles() throws IOException {
+        for (MaterializationStrategy strategy : MaterializationStrategy.values()) {
+            setUp();
+            target = root.resolve(strategy.name()).resolve("libs/lib");
+            Files.createDirectories(target.resolve("vars"));
+            Files.writeString(target.resolve("version.txt"), "previous");
+            Files.writeString(target.resolve("vars/hello.groovy"), "previous");
+
+            strategy.materialize(source, target);
+
+            assertMaterialized();
+        }
+    }
+
+    private void assertMaterialized() throws IOException {
+        assertEquals("def call() {}", Files.readString(target.resolve("vars/hello.groovy")));
+        assertEquals("1.2.3", Files.readString(target.resolve("version.txt")));
+    }
+}
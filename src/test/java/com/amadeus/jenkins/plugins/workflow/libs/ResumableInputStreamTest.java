@@ -0,0 +1,243 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Served by a minimal HTTP server, which can break a connection in the middle of a response
+ */
+public class ResumableInputStreamTest {
+    private static final int BROKEN_LENGTH = 16 * 1024;
+
+    private final byte[] archive = new byte[256 * 1024];
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+    private ServerSocket server;
+    private CloseableHttpClient client;
+    private URI uri;
+    private volatile int breaks;
+    private volatile int trickles;
+    private volatile boolean acceptsRanges;
+    private volatile String currentEtag;
+    private volatile String nextEtag;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(archive);
+        acceptsRanges = true;
+        currentEtag = "\"v1\"";
+        server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(this::serve, "library server");
+        thread.setDaemon(true);
+        thread.start();
+        client = HttpClients.createDefault();
+        uri = URI.create("http://localhost:" + server.getLocalPort() + "/library.zip");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testResumesAfterBrokenConnection() throws Exception {
+        breaks = 2;
+
+        assertArrayEquals(archive, download());
+        assertEquals(List.of("bytes=16384-", "bytes=32768-"), ranges);
+    }
+
+    @Test
+    public void testReadsWholeContentWithoutRange() throws Exception {
+        assertArrayEquals(archive, download());
+        assertTrue(ranges.isEmpty());
+    }
+
+    @Test
+    public void testFailsWithoutRangeSupport() {
+        breaks = 1;
+        acceptsRanges = false;
+
+        assertThrows(IOException.class, this::download);
+        assertTrue(ranges.isEmpty());
+    }
+
+    @Test
+    public void testFailsWhenArchiveChangedMeanwhile() {
+        breaks = 1;
+        nextEtag = "\"v2\"";
+
+        IOException e = assertThrows(IOException.class, this::download);
+        assertEquals(List.of("bytes=16384-"), ranges);
+        assertTrue(e.getSuppressed()[0].getMessage().contains("Returned code: 200"), e.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void testFailsAfterTooManyResumes() {
+        breaks = ResumableInputStream.MAX_RESUMES + 1;
+
+        assertThrows(IOException.class, this::download);
+        assertEquals(ResumableInputStream.MAX_RESUMES, ranges.size());
+    }
+
+    @Test
+    public void testFailsWhenRetryBudgetExhausted() {
+        breaks = 1;
+        RetryBudget retryBudget = new RetryBudget(() -> 10);
+        String host = "http://localhost:" + server.getLocalPort();
+        while (retryBudget.tryRetry(host)) {
+            // Exhausts the budget
+        }
+
+        IOException e = assertThrows(IOException.class, () -> download(null, retryBudget));
+        assertTrue(ranges.isEmpty());
+        assertTrue(e.getSuppressed()[0].getMessage().contains("retry budget"), e.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void testResumesSlowTransfer() throws Exception {
+        trickles = 1;
+
+        assertArrayEquals(archive, download(new DownloadWatchdog(10000, 10000, 64 * 1024, 200, 0)));
+        assertEquals(1, ranges.size());
+    }
+
+    @Test
+    public void testStopsAtDeadline() {
+        trickles = 1;
+
+        assertThrows(DownloadWatchdog.DeadlineExceededException.class,
+                () -> download(new DownloadWatchdog(10000, 10000, 0, 200, 500)));
+        assertTrue(ranges.isEmpty());
+    }
+
+    private byte[] download() throws IOException {
+        return download(null);
+    }
+
+    private byte[] download(DownloadWatchdog watchdog) throws IOException {
+        return download(watchdog, new RetryBudget(() -> 10));
+    }
+
+    private byte[] download(DownloadWatchdog watchdog, RetryBudget retryBudget) throws IOException {
+        HttpClientContext context = HttpClientContext.create();
+        if (watchdog != null) {
+            watchdog.attachTo(context);
+        }
+        CloseableHttpResponse response = client.execute(new HttpGet(uri), context);
+        assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        try (InputStream in = new ResumableInputStream(client, context, uri, response, retryBudget)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Serves the connections one request at a time, as the client never sends concurrent requests
+     */
+    private void serve() {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                handle(socket);
+            } catch (IOException e) {
+                // The server is stopped, or the client closed the broken connection
+            }
+        }
+    }
+
+    /**
+     * Sends the archive, or the requested range of it when the ETag still matches, breaking the connection after
+     * {@link #BROKEN_LENGTH} bytes as long as there are breaks left, and then switching to the next ETag if any.
+     * As long as there are trickles left, the bytes after the first {@link #BROKEN_LENGTH} ones are sent slowly.
+     */
+    private void handle(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.ISO_8859_1));
+        OutputStream out = socket.getOutputStream();
+        while (true) {
+            Map<String, String> headers = new HashMap<>();
+            String line = reader.readLine();
+            if (line == null) {
+                return;
+            }
+            while (!(line = reader.readLine()).isEmpty()) {
+                String[] header = line.split(":\\s*", 2);
+                headers.put(header[0].toLowerCase(Locale.ROOT), header[1]);
+            }
+            String range = headers.get("range");
+            int start = 0;
+            if (range != null) {
+                ranges.add(range);
+                if (currentEtag.equals(headers.get("if-range"))) {
+                    start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                }
+            }
+            int length = archive.length - start;
+            StringBuilder response = new StringBuilder();
+            if (start > 0) {
+                response.append("HTTP/1.1 206 Partial Content\r\nContent-Range: bytes ").append(start).append('-')
+                        .append(archive.length - 1).append('/').append(archive.length).append("\r\n");
+            } else {
+                response.append("HTTP/1.1 200 OK\r\n");
+            }
+            response.append("ETag: ").append(currentEtag).append("\r\n");
+            if (acceptsRanges) {
+                response.append("Accept-Ranges: bytes\r\n");
+            }
+            response.append("Content-Length: ").append(length).append("\r\n\r\n");
+            out.write(response.toString().getBytes(StandardCharsets.ISO_8859_1));
+            if (trickles > 0) {
+                trickles--;
+                out.write(archive, start, BROKEN_LENGTH);
+                out.flush();
+                for (int i = start + BROKEN_LENGTH; i < archive.length; i += 16) {
+                    out.write(archive, i, 16);
+                    out.flush();
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                return;
+            }
+            if (breaks > 0) {
+                breaks--;
+                out.write(archive, start, BROKEN_LENGTH);
+                out.flush();
+                if (nextEtag != null) {
+                    currentEtag = nextEtag;
+                }
+                return;
+            }
+            out.write(archive, start, length);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetryBudgetTest {
+    private static final String HOST = "https://repository.example.com";
+
+    @Test
+    public void testRetriesLimitedToShareOfRequests() {
+        RetryBudget budget = new RetryBudget(() -> 10);
+        int retries = 0;
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest(HOST);
+            if (budget.tryRetry(HOST)) {
+                retries++;
+            }
+        }
+        // The initial burst, then one retry every 10 requests
+        assertTrue(retries >= 19 && retries <= 21, "retries " + retries);
+    }
+
+    @Test
+    public void testRetriedRequestCountedOnce() {
+        RetryBudget budget = new RetryBudget(() -> 10);
+        while (budget.tryRetry(HOST)) {
+            budget.onRequest(HOST);
+        }
+        HttpClientContext context = HttpClientContext.create();
+        context.setTargetHost(HttpHost.create(HOST));
+        long requests = HttpRetrieverMetrics.get(HttpRetrieverMetrics.Metric.REQUESTS);
+
+        for (int i = 0; i < 10; i++) {
+            budget.onRequest(context);
+        }
+
+        assertEquals(requests + 1, HttpRetrieverMetrics.get(HttpRetrieverMetrics.Metric.REQUESTS));
+        assertFalse(budget.tryRetry(HOST));
+    }
+
+    @Test
+    public void testHostsHaveSeparateBudgets() {
+        RetryBudget budget = new RetryBudget(() -> 10);
+        while (budget.tryRetry(HOST)) {
+            budget.onRequest(HOST);
+        }
+
+        assertFalse(budget.tryRetry(HOST));
+        assertTrue(budget.tryRetry("https://mirror.example.com"));
+    }
+
+    @Test
+    public void testDeniedRetriesAreCounted() {
+        RetryBudget budget = new RetryBudget(() -> 10);
+        for (int i = 0; i < RetryBudget.CAPACITY; i++) {
+            assertTrue(budget.tryRetry(HOST));
+        }
+        long denied = HttpRetrieverMetrics.get(HttpRetrieverMetrics.Metric.RETRIES_DENIED_BY_BUDGET);
+
+        assertFalse(budget.tryRetry(HOST));
+        assertEquals(denied + 1, HttpRetrieverMetrics.get(HttpRetrieverMetrics.Metric.RETRIES_DENIED_BY_BUDGET));
+    }
+
+    @Test
+    public void testUnlimitedWhenDisabled() {
+        RetryBudget budget = new RetryBudget(() -> 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(budget.tryRetry(HOST));
+        }
+    }
+}
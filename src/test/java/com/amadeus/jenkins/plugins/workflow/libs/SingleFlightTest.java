@@ -0,0 +1,124 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+    private static final int FOLLOWERS = 5;
+
+    private SingleFlight<String, String> singleFlight;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        singleFlight = new SingleFlight<>();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentCallsShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch followersWaiting = new CountDownLatch(FOLLOWERS);
+
+        Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+            executions.incrementAndGet();
+            release.await();
+            return "archive";
+        }, () -> fail("The leader must not wait")));
+        waitForLeader();
+        List<Future<String>> followers = new ArrayList<>();
+        for (int i = 0; i < FOLLOWERS; i++) {
+            followers.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                executions.incrementAndGet();
+                return "other";
+            }, followersWaiting::countDown)));
+        }
+        assertTrue(followersWaiting.await(10, TimeUnit.SECONDS));
+        release.countDown();
+
+        assertEquals("archive", leader.get(10, TimeUnit.SECONDS));
+        for (Future<String> follower : followers) {
+            assertEquals("archive", follower.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void testLeaderFailureIsReportedToFollowers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch followerWaiting = new CountDownLatch(1);
+
+        Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+            release.await();
+            throw new IOException("Returned code: 404");
+        }, () -> { }));
+        waitForLeader();
+        Future<String> follower = executor.submit(() -> singleFlight.execute("key", () -> "other",
+                followerWaiting::countDown));
+        assertTrue(followerWaiting.await(10, TimeUnit.SECONDS));
+        release.countDown();
+
+        ExecutionException leaderFailure = assertThrows(ExecutionException.class, () -> leader.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, leaderFailure.getCause());
+        ExecutionException followerFailure = assertThrows(ExecutionException.class, () -> follower.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, followerFailure.getCause());
+        assertTrue(followerFailure.getCause().getMessage().contains("404"));
+    }
+
+    @Test
+    public void testFollowerTakesOverWhenLeaderIsAborted() throws Exception {
+        CountDownLatch followerWaiting = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+
+        Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+            executions.incrementAndGet();
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            return "archive";
+        }, () -> { }));
+        waitForLeader();
+        Future<String> follower = executor.submit(() -> singleFlight.execute("key", () -> {
+            executions.incrementAndGet();
+            return "archive";
+        }, followerWaiting::countDown));
+        assertTrue(followerWaiting.await(10, TimeUnit.SECONDS));
+        leader.cancel(true);
+
+        assertEquals("archive", follower.get(10, TimeUnit.SECONDS));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void testDifferentKeysDoNotWait() throws Exception {
+        assertEquals("a", singleFlight.execute("a", () -> "a", () -> fail("Must not wait")));
+        assertEquals("b", singleFlight.execute("b", () -> "b", () -> fail("Must not wait")));
+    }
+
+    private void waitForLeader() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (singleFlight.size() == 0) {
+            assertTrue(System.nanoTime() < deadline, "The leader did not start");
+            Thread.sleep(10);
+        }
+    }
+}
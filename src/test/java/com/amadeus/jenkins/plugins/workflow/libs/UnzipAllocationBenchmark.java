@@ -0,0 +1,94 @@
+package com.amadeus.jenkins.plugins.workflow.libs;
+
+import hudson.Util;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory allocated by the sequential extraction of a library, with the pooled {@link ExtractionBuffers} compared to
+ * fresh streams and inflaters for each file.
+ * <p>
+ * Run with the GC profiler of {@link BenchmarkRunner}: {@code gc.alloc.rate.norm} is the number of bytes allocated
+ * by each extraction of the {@link ExtractionBenchmark#FILES} files of {@link ExtractionBenchmark#FILE_SIZE} bytes,
+ * 31.25 MB in total. The profiler also reports it for the {@code FilePath.unzip} baseline of
+ * {@link ExtractionBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UnzipAllocationBenchmark {
+
+    private Path directory;
+    private Path archive;
+    private int extractions;
+
+    @Setup(Level.Trial)
+    public void createArchive() throws IOException {
+        directory = Files.createTempDirectory("unzip-allocation-benchmark");
+        archive = directory.resolve("library.zip");
+        ExtractionBenchmark.writeLibrary(archive);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteExtractions() throws IOException {
+        for (int i = 0; i < extractions; i++) {
+            Util.deleteRecursive(directory.resolve("extraction-" + i).toFile());
+        }
+        extractions = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteArchive() throws IOException {
+        Util.deleteRecursive(directory.toFile());
+    }
+
+    @Benchmark
+    public Path pooledBuffers() throws IOException {
+        Path destination = nextDestination();
+        ArchiveExtractor.extract(archive, destination, 1);
+        return destination;
+    }
+
+    /**
+     * A new stream, and so a new inflater and buffer, for each file
+     */
+    @Benchmark
+    public Path entryStreams() throws IOException {
+        Path destination = nextDestination();
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+                Path target = destination.resolve(entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+        }
+        return destination;
+    }
+
+    private Path nextDestination() {
+        return directory.resolve("extraction-" + extractions++);
+    }
+}